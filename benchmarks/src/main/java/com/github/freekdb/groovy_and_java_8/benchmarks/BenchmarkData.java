@@ -0,0 +1,88 @@
+package com.github.freekdb.groovy_and_java_8.benchmarks;
+
+import com.github.freekdb.groovy_and_java_8.movies.MovieDataGenerator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input data for the benchmarks: movie lines at a requested scale. The lines are taken (and repeated when needed)
+ * from the file in the "benchmark.movies" system property or from the movies file in the data directory. Without
+ * such a file, the lines are generated by MovieDataGenerator with a fixed seed.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class BenchmarkData {
+    private BenchmarkData() {
+    }
+
+    /**
+     * Get a number of movie lines.
+     *
+     * @param lineCount the number of lines.
+     * @return the movie lines.
+     */
+    public static List<String> movieLines(final int lineCount) {
+        final Path sourceFile = findSourceFile();
+        final List<String> sourceLines = sourceFile != null ? readLines(sourceFile) : generateLines(lineCount);
+        final List<String> lines = new ArrayList<>(lineCount);
+        for (int lineIndex = 0; lineIndex < lineCount; lineIndex++)
+            lines.add(sourceLines.get(lineIndex % sourceLines.size()));
+        return lines;
+    }
+
+    /**
+     * Write a number of movie lines to a temporary file, which is deleted when the JVM exits.
+     *
+     * @param lineCount the number of lines.
+     * @return the path of the temporary file.
+     */
+    public static Path movieFile(final int lineCount) {
+        try {
+            final Path movieFile = Files.createTempFile("movies-" + lineCount + "-", ".txt");
+            movieFile.toFile().deleteOnExit();
+            return Files.write(movieFile, movieLines(lineCount), StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path findSourceFile() {
+        final String configuredFile = System.getProperty("benchmark.movies");
+        if (configuredFile != null)
+            return Paths.get(configuredFile);
+        for (final String directory : new String[]{"data", "../data"})
+            if (Files.exists(Paths.get(directory, "movies-mpaa.txt")))
+                return Paths.get(directory, "movies-mpaa.txt");
+        return null;
+    }
+
+    private static List<String> generateLines(final int lineCount) {
+        try {
+            final Path generatedFile = Files.createTempFile("movies-generated-", ".txt");
+            try {
+                new MovieDataGenerator(1234567890L, lineCount, 170_000, 0.3, 1, 30, 200,
+                                       MovieDataGenerator.CastSizeDistribution.GEOMETRIC).generate(generatedFile);
+                return readLines(generatedFile);
+            } finally {
+                Files.delete(generatedFile);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<String> readLines(final Path filePath) {
+        try {
+            return Files.readAllLines(filePath, StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.freekdb.groovy_and_java_8.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks with the GC profiler, which adds the allocation rate (gc.alloc.rate and gc.alloc.rate.norm) to
+ * the throughput and average time results.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class BenchmarkRunner {
+    /**
+     * Main method.
+     *
+     * @param arguments optional regular expressions to select the benchmarks; all benchmarks are run by default.
+     * @throws RunnerException if a benchmark fails.
+     */
+    public static void main(final String[] arguments) throws RunnerException {
+        final OptionsBuilder optionsBuilder = new OptionsBuilder();
+        for (final String include : arguments)
+            optionsBuilder.include(include);
+        if (arguments.length == 0)
+            optionsBuilder.include("com\\.github\\.freekdb\\..*|nl\\.allthingsdigital\\..*");
+        new Runner(optionsBuilder.addProfiler(GCProfiler.class).build()).run();
+    }
+}
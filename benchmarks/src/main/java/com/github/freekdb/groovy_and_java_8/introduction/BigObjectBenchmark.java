@@ -0,0 +1,35 @@
+package com.github.freekdb.groovy_and_java_8.introduction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the BigObject reduction of Introduction.randomNumberStream.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BigObjectBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int numberCount;
+
+    @Benchmark
+    public BigObject addRandomNumbers() {
+        return Introduction.addRandomNumbers(1234567890, numberCount);
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.freekdb.groovy_and_java_8.introduction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Benchmark for the primitive LongSum pipeline of Introduction.sumRandomNumbers, up to 10^9 numbers, sequential and
+ * parallel. The full-range numbers (maximumNumber Long.MAX_VALUE) overflow a long every few additions, so they
+ * measure the overflow path; LongStream.sum (which silently overflows) is the baseline without overflow detection.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LongSumBenchmark {
+    private static final int RANDOM_SEED = 1234567890;
+
+    @Param({"1000000", "1000000000"})
+    private long numberCount;
+
+    @Param({"1000000", "9223372036854775807"})
+    private long maximumNumber;
+
+    @Param({"false", "true"})
+    private boolean parallel;
+
+    @Benchmark
+    public BigObject sumRandomNumbers() {
+        return Introduction.sumRandomNumbers(RANDOM_SEED, numberCount, maximumNumber, parallel).toBigObject();
+    }
+
+    @Benchmark
+    public long longStreamSum() {
+        final LongStream indices = LongStream.range(0, numberCount);
+        return (parallel ? indices.parallel() : indices)
+            .map(index -> Introduction.randomNumber(RANDOM_SEED, index, maximumNumber))
+            .sum();
+    }
+}
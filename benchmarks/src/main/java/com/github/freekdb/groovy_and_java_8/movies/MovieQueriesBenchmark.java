@@ -0,0 +1,100 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import com.github.freekdb.groovy_and_java_8.benchmarks.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmarks for the Java 7, Java 8, and columnar variants of the queries in JavaMovieQueries, and for the actor
+ * lookups on the inverted actor index.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MovieQueriesBenchmark {
+    @Param({"1000", "10000", "100000"})
+    private int lineCount;
+
+    private final JavaMovieQueries queries = new JavaMovieQueries();
+    private List<Movie> movies;
+    private MovieStore store;
+    private ActorIndex index;
+
+    @Setup
+    public void setUp() {
+        final List<String> lines = BenchmarkData.movieLines(lineCount);
+        movies = lines.stream().map(Movie::new).collect(Collectors.toList());
+        final MovieStore.Builder builder = new MovieStore.Builder();
+        lines.forEach(builder::addLine);
+        store = builder.build();
+        index = new ActorIndex(store);
+    }
+
+    @Benchmark
+    public String yearWithMostMoviesJava7() {
+        return queries.yearWithMostMoviesJava7(movies);
+    }
+
+    @Benchmark
+    public String yearWithMostMoviesJava8() {
+        return queries.yearWithMostMoviesJava8(movies);
+    }
+
+    @Benchmark
+    public String yearWithMostMoviesColumnar() {
+        return queries.yearWithMostMoviesColumnar(store);
+    }
+
+    @Benchmark
+    public String mostActiveActorJava7() {
+        return queries.mostActiveActorJava7(movies);
+    }
+
+    @Benchmark
+    public String mostActiveActorJava8() {
+        return queries.mostActiveActorJava8(movies);
+    }
+
+    @Benchmark
+    public String mostActiveActorColumnar() {
+        return queries.mostActiveActorColumnar(store);
+    }
+
+    @Benchmark
+    public String mostActiveActorInSingleYearJava7() {
+        return queries.mostActiveActorInSingleYearJava7(movies);
+    }
+
+    @Benchmark
+    public String mostActiveActorInSingleYearJava8() {
+        return queries.mostActiveActorInSingleYearJava8(movies);
+    }
+
+    @Benchmark
+    public String mostActiveActorInSingleYearColumnar() {
+        return queries.mostActiveActorInSingleYearColumnar(store);
+    }
+
+    @Benchmark
+    public String actorLookupsIndex() {
+        return queries.actorLookupsIndex(index);
+    }
+}
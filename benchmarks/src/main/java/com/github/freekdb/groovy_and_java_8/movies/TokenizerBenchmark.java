@@ -0,0 +1,166 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import com.github.freekdb.groovy_and_java_8.benchmarks.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for tokenizing movie lines: the indexOf/split parsing on strings (already decoded, and decoded line by
+ * line with a BufferedReader like the original Files.lines reader) versus the block tokenizer on UTF-8 bytes (with
+ * SWAR and with the scalar loop) and on strings, and the indexOf/split Movie constructor versus the
+ * current one (which reuses a tokenizer per thread). With asciiOnly, every non-ASCII character of the input is
+ * replaced by '?', so the comparison is not influenced by the decoding of multi-byte characters.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenizerBenchmark {
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    @Param({"1000", "10000", "100000"})
+    private int lineCount;
+
+    @Param({"false", "true"})
+    private boolean asciiOnly;
+
+    private List<String> lines;
+    private byte[] block;
+    private final MovieLineTokenizer swarTokenizer = new MovieLineTokenizer(true);
+    private final MovieLineTokenizer scalarTokenizer = new MovieLineTokenizer(false);
+
+    @Setup
+    public void setUp() {
+        lines = BenchmarkData.movieLines(lineCount);
+        if (asciiOnly)
+            lines.replaceAll(line -> line.replaceAll("[^\\x00-\\x7F]", "?"));
+        block = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long splitStrings() {
+        long checksum = 0;
+        for (final String line : lines)
+            checksum += splitLine(line);
+        return checksum;
+    }
+
+    @Benchmark
+    public long readLinesSplit() throws IOException {
+        long checksum = 0;
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(block),
+                                                                                    StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+                checksum += splitLine(line);
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long tokenizeStrings() {
+        long checksum = 0;
+        final List<String> actors = new ArrayList<>();
+        for (final String line : lines) {
+            scalarTokenizer.tokenize(line);
+            actors.clear();
+            checksum += scalarTokenizer.getTitle(0).length() + scalarTokenizer.getReleaseYear(0)
+                        + scalarTokenizer.getActors(0, true, actors);
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long tokenizeBlockSwar() {
+        return tokenizeBlock(swarTokenizer);
+    }
+
+    @Benchmark
+    public long tokenizeBlockScalar() {
+        return tokenizeBlock(scalarTokenizer);
+    }
+
+    @Benchmark
+    public List<Movie> parseMoviesSplit() {
+        final List<Movie> movies = new ArrayList<>(lines.size());
+        for (final String line : lines) {
+            final int startIndexYear = line.indexOf('(') + 1;
+            final int endIndexYear = Math.min(line.indexOf(')', startIndexYear), startIndexYear + 4);
+            final int startIndexActors = line.indexOf('/');
+            final String title = line.substring(0, startIndexYear - 1).trim();
+            final int releaseYear = Integer.parseInt(line.substring(startIndexYear, endIndexYear));
+            final List<Actor> actors = new ArrayList<>();
+            for (final String actorName : line.substring(startIndexActors + 1).split("/")) {
+                final int commaIndex = actorName.indexOf(',');
+                final String firstName = (commaIndex != -1) ? actorName.substring(commaIndex + 1).trim() : actorName;
+                final String lastName = (commaIndex != -1) ? actorName.substring(0, commaIndex).trim() : "";
+                actors.add(new Actor(firstName, lastName));
+            }
+            movies.add(new Movie(title, releaseYear, actors));
+        }
+        return movies;
+    }
+
+    @Benchmark
+    public List<Movie> parseMovies() {
+        final List<Movie> movies = new ArrayList<>(lines.size());
+        for (final String line : lines) {
+            final Movie movie = new Movie(line);
+            movie.getActors();
+            movies.add(movie);
+        }
+        return movies;
+    }
+
+    private static long splitLine(final String line) {
+        final int startIndexYear = line.indexOf('(') + 1;
+        final int endIndexYear = Math.min(line.indexOf(')', startIndexYear), startIndexYear + 4);
+        final int startIndexActors = line.indexOf('/');
+        final String title = line.substring(0, startIndexYear - 1).trim();
+        final int releaseYear = Integer.parseInt(line.substring(startIndexYear, endIndexYear));
+        final List<String> actors = Arrays.asList(line.substring(startIndexActors + 1).trim().split("/"));
+        return title.length() + releaseYear + actors.size();
+    }
+
+    /**
+     * Tokenize the input in blocks of (at most) BLOCK_SIZE bytes, like FileSource does.
+     */
+    private long tokenizeBlock(final MovieLineTokenizer tokenizer) {
+        long checksum = 0;
+        final List<String> actors = new ArrayList<>();
+        int blockStart = 0;
+        while (blockStart < block.length) {
+            final int blockEnd = Math.min(block.length, blockStart + BLOCK_SIZE);
+            final int linesEnd = tokenizer.tokenize(block, blockStart, blockEnd, blockEnd == block.length);
+            for (int line = 0; line < tokenizer.getLineCount(); line++) {
+                actors.clear();
+                checksum += tokenizer.getTitle(line).length() + tokenizer.getReleaseYear(line)
+                            + tokenizer.getActors(line, true, actors);
+            }
+            blockStart = linesEnd;
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.freekdb.groovy_and_java_8.sinks;
+
+import com.github.freekdb.groovy_and_java_8.benchmarks.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for all sinks of JavaSourceAndSinks through a sequential or parallel Fork, on pre-parsed lines and with
+ * the complete file source plus fork pipeline, with and without instrumentation of the fork, and through a
+ * PipelinedFork (which is not instrumented). Reports are not part of the measurements; the pipelined fork is closed,
+ * which waits until its consumers have processed every line.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@org.openjdk.jmh.annotations.Fork(1)
+@State(Scope.Benchmark)
+public class ForkBenchmark {
+    @Param({"1000", "10000", "100000"})
+    private int lineCount;
+
+    @Param({"false", "true"})
+    private boolean instrumented;
+
+    private Path movieFile;
+    private List<ParsedLine> parsedLines;
+
+    @Setup
+    public void setUp() {
+        movieFile = BenchmarkData.movieFile(lineCount);
+        parsedLines = ParsedLine.parse(movieFile);
+    }
+
+    @Benchmark
+    public Sink allSinksThroughFork() {
+        final Sink fork = JavaSourceAndSinks.createFork(false, DistinctMode.EXACT, instrumented);
+        parsedLines.forEach(parsedLine -> parsedLine.sendTo(fork));
+        return fork;
+    }
+
+    @Benchmark
+    public Sink allSinksThroughParallelFork() {
+        final Sink fork = JavaSourceAndSinks.createFork(true, DistinctMode.EXACT, instrumented);
+        fork.combine(parsedLines.parallelStream().collect(fork::newPartial,
+                                                          (partial, parsedLine) -> parsedLine.sendTo(partial),
+                                                          Sink::combine));
+        return fork;
+    }
+
+    @Benchmark
+    public Sink fileSourceAndFork() {
+        final Sink fork = JavaSourceAndSinks.createFork(false, DistinctMode.EXACT, instrumented);
+        new FileSource(fork).read(movieFile.toString());
+        return fork;
+    }
+
+    @Benchmark
+    public Sink fileSourceAndPipelinedFork() {
+        try (final PipelinedFork fork = new PipelinedFork(JavaSourceAndSinks.createSinks(DistinctMode.EXACT))) {
+            new FileSource(fork).read(movieFile.toString());
+            return fork;
+        }
+    }
+
+    @Benchmark
+    public Sink fileSourceAndParallelFork() {
+        final Sink fork = JavaSourceAndSinks.createFork(true, DistinctMode.EXACT, instrumented);
+        new FileSource(fork).read(movieFile.toString());
+        return fork;
+    }
+}
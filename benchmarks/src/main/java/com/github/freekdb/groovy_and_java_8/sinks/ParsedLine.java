@@ -0,0 +1,61 @@
+package com.github.freekdb.groovy_and_java_8.sinks;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Movie line as parsed by FileSource, so sinks can be measured without the parsing.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+class ParsedLine {
+    private final String title;
+    private final int year;
+    private final String appendix;
+    private final List<String> actors;
+
+    private ParsedLine(final String title, final int year, final String appendix, final List<String> actors) {
+        this.title = title;
+        this.year = year;
+        this.appendix = appendix;
+        this.actors = actors;
+    }
+
+    static List<ParsedLine> parse(final Path movieFile) {
+        final LineRecorder lineRecorder = new LineRecorder();
+        new FileSource(lineRecorder).read(movieFile.toString());
+        return lineRecorder.parsedLines;
+    }
+
+    void sendTo(final Sink sink) {
+        sink.processLine(title, year, appendix, actors);
+    }
+
+    /**
+     * Sink that records the parsed lines.
+     */
+    private static class LineRecorder implements Sink {
+        private final List<ParsedLine> parsedLines = new ArrayList<>();
+
+        @Override
+        public void processLine(final String title, final int year, final String appendix,
+                                final List<String> actors) {
+            parsedLines.add(new ParsedLine(title, year, appendix, new ArrayList<>(actors)));
+        }
+
+        @Override
+        public void report() {
+        }
+
+        @Override
+        public Sink newPartial() {
+            return new LineRecorder();
+        }
+
+        @Override
+        public void combine(final Sink partial) {
+            parsedLines.addAll(((LineRecorder) partial).parsedLines);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.freekdb.groovy_and_java_8.sinks;
+
+import com.github.freekdb.groovy_and_java_8.benchmarks.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for each sink of JavaSourceAndSinks alone, on pre-parsed lines. Reports are not part of the
+ * measurements.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SinkBenchmark {
+    @Param({"1000", "10000", "100000"})
+    private int lineCount;
+
+    @Param({"MovieCounter", "DistinctTitles", "ClintFinder", "DistinctYears", "YearsWithoutMovies", "ProlificActor",
+            "ProlificActorYear", "MostBusyYear", "HeavyHitters", "DistinctActors", "ApproximateDistinctTitles",
+            "ApproximateDistinctActors"})
+    private String sinkName;
+
+    private List<ParsedLine> parsedLines;
+
+    @Setup
+    public void setUp() {
+        parsedLines = ParsedLine.parse(BenchmarkData.movieFile(lineCount));
+    }
+
+    @Benchmark
+    public Sink sinkAlone() {
+        final Sink sink = createSink(sinkName);
+        parsedLines.forEach(parsedLine -> parsedLine.sendTo(sink));
+        return sink;
+    }
+
+    private static Sink createSink(final String sinkName) {
+        switch (sinkName) {
+            case "MovieCounter":
+                return new MovieCounter();
+            case "DistinctTitles":
+                return new DistinctTitles();
+            case "ClintFinder":
+                return new ClintFinder();
+            case "DistinctYears":
+                return new DistinctYears();
+            case "YearsWithoutMovies":
+                return new YearsWithoutMovies();
+            case "ProlificActor":
+                return new ProlificActor();
+            case "ProlificActorYear":
+                return new ProlificActorYear();
+            case "MostBusyYear":
+                return new MostBusyYear();
+            case "HeavyHitters":
+                return new HeavyHitters();
+            case "DistinctActors":
+                return new DistinctActors();
+            case "ApproximateDistinctTitles":
+                return new ApproximateDistinctTitles();
+            case "ApproximateDistinctActors":
+                return new ApproximateDistinctActors();
+            default:
+                throw new IllegalArgumentException("Unknown sink: " + sinkName);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package nl.allthingsdigital.moviedb;
+
+import com.github.freekdb.groovy_and_java_8.benchmarks.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the consumers of the david moviedb module, alone and chained like in Movies.run (on a sequential
+ * and on a parallel stream).
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConsumerBenchmark {
+    @Param({"1000", "10000", "100000"})
+    private int lineCount;
+
+    private final Movies movies = new Movies();
+    private List<String> lines;
+
+    @Setup
+    public void setUp() {
+        lines = BenchmarkData.movieLines(lineCount);
+    }
+
+    @Benchmark
+    public Object actorConsumer() {
+        final Movies.ActorConsumer actor = movies.new ActorConsumer(200_000);
+        lines.forEach(actor);
+        return actor;
+    }
+
+    @Benchmark
+    public Object movieConsumer() {
+        final Movies.MovieConsumer titles = movies.new MovieConsumer(20_000);
+        lines.forEach(titles);
+        return titles;
+    }
+
+    @Benchmark
+    public Object yearConsumer() {
+        final Movies.YearConsumer year = movies.new YearConsumer(100);
+        lines.forEach(year);
+        return year;
+    }
+
+    @Benchmark
+    public Object allConsumers() {
+        final Movies.ActorConsumer actor = movies.new ActorConsumer(200_000);
+        final Movies.MovieConsumer titles = movies.new MovieConsumer(20_000);
+        final Movies.YearConsumer year = movies.new YearConsumer(100);
+        lines.stream().peek(titles).peek(year).forEach(actor);
+        return actor;
+    }
+
+    @Benchmark
+    public Object allConsumersParallel() {
+        final Movies.ActorConsumer actor = movies.new ActorConsumer(200_000);
+        final Movies.MovieConsumer titles = movies.new MovieConsumer(20_000);
+        final Movies.YearConsumer year = movies.new YearConsumer(100);
+        lines.parallelStream().peek(titles).peek(year).forEach(actor);
+        return actor;
+    }
+}
@@ -10,13 +10,18 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.IntSummaryStatistics;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -30,33 +35,93 @@ import java.util.stream.Stream;
 public class Movies {
     private static final String CLINT = "Eastwood, Clint";
 
-    public static void main(String[] args) throws IOException {
+    /**
+     * Print statistics for one or more movie files; "--parallel" also splits the lines of each file over a parallel
+     * stream.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
 
-        Movies movies = new Movies();
-        for (String file : args) {
-            movies.run(file);
-        }
+        List<String> files = new ArrayList<>(Arrays.asList(args));
+        Movies movies = new Movies(files.remove("--parallel"));
+        movies.run(files);
+    }
+
+    private final boolean parallel;
+
+    public Movies() {
+        this(false);
     }
 
-    private void run(String file) throws IOException {
-        Stream<String> lines = Files.lines(Paths.get(file));
+    public Movies(boolean parallel) {
+        this.parallel = parallel;
+    }
 
-        ActorConsumer actor = new ActorConsumer(200_000);
-        MovieConsumer titles = new MovieConsumer(20_000);
-        YearConsumer year = new YearConsumer(100);
+    /**
+     * Process all shard files at the same time on a bounded thread pool, merge the consumers of the shards (in the
+     * order of the files) and print one report for all files together.
+     */
+    private void run(List<String> files) throws IOException, InterruptedException {
+        int threadCount = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Shard>> shards = new ArrayList<>();
+            for (String file : files) {
+                shards.add(executor.submit(() -> readShard(file)));
+            }
+            Shard total = new Shard();
+            for (Future<Shard> shard : shards) {
+                total.merge(getShard(shard));
+            }
+            report(total);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Shard readShard(String file) throws IOException {
+        Shard shard = new Shard();
+        try (Stream<String> lines = Files.lines(Paths.get(file))) {
+            (parallel ? lines.parallel() : lines).peek(shard.titles).peek(shard.year).forEach(shard.actor);
+        }
+        return shard;
+    }
 
-        lines.peek(titles).peek(year).forEach(actor);
+    private Shard getShard(Future<Shard> shard) throws IOException, InterruptedException {
+        try {
+            return shard.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
 
-        System.out.println(actor.report());
+    private void report(Shard total) {
+        System.out.println(total.actor.report());
 
-        List<String> moviesForClint = actor.getMoviesForActor(CLINT);
+        List<String> moviesForClint = total.actor.getMoviesForActor(CLINT);
         System.out.println(String.format("There are %d movies featuring %s", moviesForClint.size(), CLINT));
         System.out.println(String.format("Movies featuring %s: %s", CLINT,
                 moviesForClint.stream().collect(Collectors.joining("\", \"", "\"", "\""))));
 
-        System.out.println(titles.report());
-        System.out.println(year.report());
+        System.out.println(total.titles.report());
+        System.out.println(total.year.report());
+    }
 
+    /**
+     * The consumers for one shard file; merging shards gives the consumers for all files.
+     */
+    class Shard {
+        final ActorConsumer actor = new ActorConsumer(200_000);
+        final MovieConsumer titles = new MovieConsumer(20_000);
+        final YearConsumer year = new YearConsumer(100);
+
+        void merge(Shard other) {
+            actor.merge(other.actor);
+            titles.merge(other.titles);
+            year.merge(other.year);
+        }
     }
 
     private static class Pair<A, B> {
@@ -85,7 +150,7 @@ public class Movies {
         }
     }
 
-    private abstract class AbstractMovieDBConsumer implements Consumer<String> {
+    abstract class AbstractMovieDBConsumer implements Consumer<String> {
         abstract String report();
 
         protected Pair<Integer,String> getTitle(String line) {
@@ -119,67 +184,105 @@ public class Movies {
         }
     }
 
-    private class ActorConsumer extends AbstractMovieDBConsumer {
+    /**
+     * The movies of one actor. The methods are synchronized on the actor, so threads only contend when they add movies
+     * of the same actor at the same time.
+     */
+    static class ActorMovies {
+        private final List<String> movies = new ArrayList<>();
+        private final Map<Integer,Integer> moviesPerYear = new HashMap<>();
 
-        Map<String,List<String>> actors;
-        Map<String,Map<Integer,Integer>> actorMoviesPerYear;
+        synchronized void add(String movie, int year) {
+            movies.add(movie);
+            moviesPerYear.merge(year, 1, Integer::sum);
+        }
 
-        private ActorConsumer(int expectedSize) {
-            this.actorMoviesPerYear = new ConcurrentHashMap<>(expectedSize);
+        synchronized void addAll(ActorMovies other) {
+            movies.addAll(other.movies);
+            other.moviesPerYear.forEach((Y, C) -> moviesPerYear.merge(Y, C, Integer::sum));
+        }
+
+        synchronized int getMovieCount() {
+            return movies.size();
+        }
+
+        /**
+         * Get the movie titles in alphabetical order, so the result does not depend on the order of processing.
+         */
+        synchronized List<String> getMovies() {
+            List<String> sortedMovies = new ArrayList<>(movies);
+            Collections.sort(sortedMovies);
+            return sortedMovies;
+        }
+
+        synchronized Map<Integer,Integer> getMoviesPerYear() {
+            return new HashMap<>(moviesPerYear);
+        }
+    }
+
+    class ActorConsumer extends AbstractMovieDBConsumer {
+
+        Map<String,ActorMovies> actors;
+
+        ActorConsumer(int expectedSize) {
             this.actors = new ConcurrentHashMap<>(expectedSize);
         }
 
         @Override
         public void accept(String t) {
             int start = t.indexOf('/');
-            List<String> actorList = Arrays.asList(t.substring(start + 1).split("/"));
             Pair<Integer,String> yearAndTitle = getTitle(t);
             String movie = yearAndTitle.getSecond();
-            Integer year = yearAndTitle.getFirst();
-            actorList.stream().forEach(A -> {
-                actors.merge(A, getMovieList(movie),
-                    (L1, L2) -> { L1.addAll(L2); return L1; } );
-                actorMoviesPerYear.merge(A, getMovieMap(year),
-                        (M1, M2) -> {
-                            M1.put(year, M1.getOrDefault(year, 0) + M2.getOrDefault(year, 0));
-                            return M1;
-                        });
-            });
+            int year = yearAndTitle.getFirst();
+            for (String actor : t.substring(start + 1).split("/")) {
+                getActorMovies(actor).add(movie, year);
+            }
         }
 
-        private Map<Integer,Integer> getMovieMap(Integer year) {
-            Map<Integer, Integer> map = new HashMap<>();
-            map.put(year, 1);
-            return map;
-        }
-        private List<String> getMovieList(String movie) {
-            List<String> movies = new ArrayList<>();
-            movies.add(movie);
-            return movies;
+        private ActorMovies getActorMovies(String actor) {
+            // Look up first: computeIfAbsent locks the bin even when the actor is already present.
+            ActorMovies movies = actors.get(actor);
+            return movies != null ? movies : actors.computeIfAbsent(actor, A -> new ActorMovies());
         }
 
         public List<String> getMoviesForActor(final String actor) {
-            return actors.get(actor);
+            ActorMovies movies = actors.get(actor);
+            return movies != null ? movies.getMovies() : Collections.emptyList();
+        }
+
+        void merge(ActorConsumer other) {
+            other.actors.forEach((A, M) -> getActorMovies(A).addAll(M));
         }
 
+        /**
+         * Get the actor with the most movies; ties are broken by the actor name, so the result does not depend on the
+         * order of processing.
+         */
         public Pair<String,Integer> getActorWithMostMovies() {
             Pair<String,Integer> pair = new Pair<>("", 0);
             actors.forEach((actor, movies) -> {
-                if (movies.size() > pair.getSecond()) {
+                int movieCount = movies.getMovieCount();
+                if (movieCount > pair.getSecond()
+                        || (movieCount == pair.getSecond() && actor.compareTo(pair.getFirst()) < 0)) {
                     pair.setFirst(actor);
-                    pair.setSecond(movies.size());
+                    pair.setSecond(movieCount);
                 }
                 });
             return pair;
         }
 
+        /**
+         * Get the actor and year with the most movies; ties are broken by the actor name and then the year.
+         */
         public Pair<String,Integer> getActorWithMostMoviesInYear() {
             Pair<String,Integer> pair = new Pair<>("", 0);
             Pair<String,Integer> mostMovies = new Pair<>("", 0);
-            actorMoviesPerYear.forEach((actor, moviesPerYear) -> {
-                moviesPerYear.forEach((year, movies) -> {
-                    if (movies > mostMovies.getSecond()) {
-                        mostMovies.setSecond(movies);
+            actors.forEach((actor, movies) -> {
+                movies.getMoviesPerYear().forEach((year, count) -> {
+                    int order = actor.compareTo(pair.getFirst());
+                    if (count > mostMovies.getSecond() || (count.equals(mostMovies.getSecond())
+                            && (order < 0 || (order == 0 && year < pair.getSecond())))) {
+                        mostMovies.setSecond(count);
                         pair.setFirst(actor);
                         pair.setSecond(year);
                     }
@@ -198,7 +301,7 @@ public class Movies {
             pair = getActorWithMostMoviesInYear();
             String actor = pair.getFirst();
             Integer year = pair.getSecond();
-            Integer movies = actorMoviesPerYear.get(actor).get(year);
+            Integer movies = actors.get(actor).getMoviesPerYear().get(year);
             report.append(String.format("The most active actor in a year was %s with %d movies in %d",
                     actor, movies, year));
             return report.toString();
@@ -206,43 +309,59 @@ public class Movies {
 
     }
 
-    private class MovieConsumer extends AbstractMovieDBConsumer {
+    class MovieConsumer extends AbstractMovieDBConsumer {
 
-        int count;
+        LongAdder count;
         Set<String> unique;
 
-        private MovieConsumer(int expectedSize) {
-            this.count = 0;
-            this.unique = new HashSet<>(expectedSize);
+        MovieConsumer(int expectedSize) {
+            this.count = new LongAdder();
+            this.unique = ConcurrentHashMap.newKeySet(expectedSize);
         }
 
         @Override
         public void accept(String t) {
-            count++;
+            count.increment();
             unique.add(getTitle(t).getSecond());
         }
 
         @Override
         public String report() {
-            return String.format("There are %d movies in the database, with %d unique titles", count, unique.size());
+            return String.format("There are %d movies in the database, with %d unique titles", count.sum(),
+                    unique.size());
+        }
+
+        void merge(MovieConsumer other) {
+            count.add(other.count.sum());
+            unique.addAll(other.unique);
         }
     }
 
-    private class YearConsumer extends AbstractMovieDBConsumer {
-        Map<Integer,Integer> map;
+    class YearConsumer extends AbstractMovieDBConsumer {
+        Map<Integer,LongAdder> map;
 
-        private YearConsumer(int expectedSize) {
+        YearConsumer(int expectedSize) {
             this.map = new ConcurrentHashMap<>(expectedSize);
         }
 
         @Override
         public void accept(String t) {
-            map.merge(getYear(t), 1, (A, B) -> {return A + B;});
+            getCounter(getYear(t)).increment();
+        }
+
+        private LongAdder getCounter(Integer year) {
+            LongAdder counter = map.get(year);
+            return counter != null ? counter : map.computeIfAbsent(year, Y -> new LongAdder());
+        }
+
+        void merge(YearConsumer other) {
+            other.map.forEach((Y, C) -> getCounter(Y).add(C.sum()));
         }
 
         @Override
         public String report() {
-            Map<Integer, Integer> wc = new HashMap<>(map);
+            Map<Integer, Integer> wc = new HashMap<>();
+            map.forEach((Y, C) -> wc.put(Y, C.intValue()));
             final StringBuilder report = new StringBuilder();
             report.append(String.format("Movies without a year: %d\n", wc.get(-1) == null ? 0 : wc.get(-1)));
             wc.remove(-1);
@@ -268,7 +387,7 @@ public class Movies {
             private int bestYear = 0;
             @Override
             public void accept(Integer year, Integer movies) {
-                if (movies > maxMovies) {
+                if (movies > maxMovies || (movies == maxMovies && year < bestYear)) {
                     bestYear = year;
                     maxMovies = movies;
                 }
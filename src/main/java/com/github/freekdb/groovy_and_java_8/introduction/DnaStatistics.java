@@ -1,31 +1,376 @@
 package com.github.freekdb.groovy_and_java_8.introduction;
 
+import com.github.freekdb.groovy_and_java_8.util.LongCounter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
- * Class to determine some DNA statistics.
+ * Class to determine some DNA statistics: the base counts and GC content, and optionally the GC content per window of
+ * bases and the counts of the k-mers (substrings of k bases).
+ * <p>
+ * The input is the text of a FASTA file (or just a sequence of bases): header lines starting with '>' are skipped,
+ * line breaks are ignored, and k-mers do not span headers or other characters than A, C, G, and T (like N). Bases are
+ * classified with a lookup table. Windows use global coordinates: base positions count all sequence characters
+ * (including N) from the start of the input. K-mers are packed into longs with two bits per base and counted in a
+ * dense array (k up to 10) or in a primitive hash table.
+ * <p>
+ * Partial statistics can be combined, so the class works as a stream collector. For windows and k-mers the characters
+ * should be accepted in order; FastaAnalyzer reads files in parallel chunks and tells each partial where its chunk
+ * starts.
  *
  * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
  */
 public class DnaStatistics {
+    private static final String BASES = "ACGT";
+    private static final byte OTHER = 4;
+    private static final byte NEWLINE = 5;
+    private static final byte CARRIAGE_RETURN = 6;
+    private static final byte HEADER_START = 7;
+    private static final byte[] BASE_CODES = createBaseCodes();
+    private static final int MAXIMUM_KMER_LENGTH = 31;
+    private static final int MAXIMUM_DENSE_KMER_LENGTH = 10;
+
+    private final int kmerLength;
+    private final int windowSize;
     private long[] counts = new long[4];
+    private long otherCount;
+    private long headerCount;
+
+    private boolean lineStart = true;
+    private boolean inHeader;
+    private int kmerLookahead = -1;
+
+    private final long kmerMask;
+    private long kmer;
+    private int kmerBaseCount;
+    private long[] denseKmerCounts;
+    private LongCounter kmerCounts;
+
+    private int window;
+    private int windowRemaining;
+    private int[] windowBaseCounts;
+    private int[] windowGcCounts;
 
     public DnaStatistics() {
+        this(0, 0);
+    }
+
+    /**
+     * Create statistics with k-mer counts and/or GC content per window.
+     *
+     * @param kmerLength the k-mer length (1 to 31), or 0 to skip the k-mer counts.
+     * @param windowSize the number of bases per window, or 0 to skip the windows.
+     */
+    public DnaStatistics(final int kmerLength, final int windowSize) {
+        if (kmerLength < 0 || kmerLength > MAXIMUM_KMER_LENGTH)
+            throw new IllegalArgumentException("K-mer length should be between 0 and " + MAXIMUM_KMER_LENGTH + ": "
+                                               + kmerLength);
+        if (windowSize < 0)
+            throw new IllegalArgumentException("Window size should not be negative: " + windowSize);
+        this.kmerLength = kmerLength;
+        this.windowSize = windowSize;
+        this.kmerMask = (1L << (2 * kmerLength)) - 1;
+        if (kmerLength > 0 && kmerLength <= MAXIMUM_DENSE_KMER_LENGTH)
+            denseKmerCounts = new long[1 << (2 * kmerLength)];
+        else if (kmerLength > 0)
+            kmerCounts = new LongCounter();
+        if (windowSize > 0) {
+            windowBaseCounts = new int[16];
+            windowGcCounts = new int[16];
+            windowRemaining = windowSize;
+        }
     }
 
     public void accept(final int value) {
-        final int baseIndex = "ACGT".indexOf(value);
-        if (baseIndex > -1)
-            counts[baseIndex]++;
+        process(value >= 0 && value < BASE_CODES.length ? BASE_CODES[value] : OTHER);
     }
 
     public void combine(final DnaStatistics other) {
         for (int baseIndex = 0; baseIndex < counts.length; baseIndex++)
             counts[baseIndex] += other.counts[baseIndex];
+        otherCount += other.otherCount;
+        headerCount += other.headerCount;
+        if (denseKmerCounts != null)
+            for (int kmerIndex = 0; kmerIndex < denseKmerCounts.length; kmerIndex++)
+                denseKmerCounts[kmerIndex] += other.denseKmerCounts[kmerIndex];
+        if (kmerCounts != null)
+            kmerCounts.combine(other.kmerCounts);
+        if (windowBaseCounts != null) {
+            ensureWindowCapacity(other.windowBaseCounts.length - 1);
+            for (int windowIndex = 0; windowIndex < other.windowBaseCounts.length; windowIndex++) {
+                windowBaseCounts[windowIndex] += other.windowBaseCounts[windowIndex];
+                windowGcCounts[windowIndex] += other.windowGcCounts[windowIndex];
+            }
+        }
     }
 
-    public void printStatistics() {
-        System.out.println("A: " + counts[0] + ", C: " + counts[1] + ", G: " + counts[2] + ", T: " + counts[3]);
+    /**
+     * Start a chunk of the input: the base position is set to the global position of the first base in the chunk and
+     * k-mers restart. A chunk that does not start at the beginning of a line should start in a sequence line.
+     *
+     * @param basePosition the number of bases before the chunk.
+     * @param atLineStart  whether the chunk starts at the beginning of a line.
+     */
+    void startChunk(final long basePosition, final boolean atLineStart) {
+        lineStart = atLineStart;
+        inHeader = false;
+        kmerBaseCount = 0;
+        kmerLookahead = -1;
+        if (windowSize > 0) {
+            window = (int) (basePosition / windowSize);
+            windowRemaining = windowSize - (int) (basePosition % windowSize);
+            ensureWindowCapacity(window);
+        }
+    }
+
+    /**
+     * Accept the bytes of a chunk (ASCII text).
+     *
+     * @param bytes the bytes.
+     * @param from  the start index (inclusive).
+     * @param to    the end index (exclusive).
+     */
+    void accept(final ByteBuffer bytes, final int from, final int to) {
+        for (int index = from; index < to; index++)
+            process(BASE_CODES[bytes.get(index) & 0xFF]);
+    }
+
+    /**
+     * Continue the k-mers of the current chunk into the bytes after it, without counting the bases themselves (the
+     * next chunk counts them), until the k-mers that end in the next chunk have been counted.
+     *
+     * @param bytes the bytes after the chunk.
+     * @param from  the start index (inclusive).
+     * @param to    the end index (exclusive).
+     * @return whether the lookahead is complete.
+     */
+    boolean acceptLookahead(final ByteBuffer bytes, final int from, final int to) {
+        if (kmerLookahead == -1)
+            kmerLookahead = kmerLength - 1;
+        for (int index = from; index < to && kmerLookahead > 0 && kmerBaseCount > 0; index++)
+            process(BASE_CODES[bytes.get(index) & 0xFF]);
+        return kmerLookahead <= 0 || kmerBaseCount == 0;
+    }
+
+    /**
+     * Count the sequence characters (not the headers and line breaks) in a chunk, with the same rules as accept.
+     *
+     * @param bytes       the bytes.
+     * @param from        the start index (inclusive).
+     * @param to          the end index (exclusive).
+     * @param atLineStart whether the chunk starts at the beginning of a line (or else in a sequence line).
+     * @return the number of bases and other sequence characters.
+     */
+    static long countBases(final ByteBuffer bytes, final int from, final int to, final boolean atLineStart) {
+        long baseCount = 0;
+        boolean lineStart = atLineStart;
+        boolean inHeader = false;
+        for (int index = from; index < to; index++) {
+            final byte code = BASE_CODES[bytes.get(index) & 0xFF];
+            if (inHeader)
+                inHeader = code != NEWLINE;
+            else if (lineStart && code == HEADER_START)
+                inHeader = true;
+            else if (code < NEWLINE || code == HEADER_START)
+                baseCount++;
+            lineStart = code == NEWLINE;
+        }
+        return baseCount;
+    }
+
+    public long getBaseCount(final char base) {
+        return counts[BASES.indexOf(base)];
+    }
+
+    public double getGcContent() {
         final long atCount = counts[0] + counts[3];
         final long gcCount = counts[1] + counts[2];
-        System.out.println("GC-content: " + (100.0 * gcCount) / (atCount + gcCount) + "%");
+        return (100.0 * gcCount) / (atCount + gcCount);
+    }
+
+    public int getWindowCount() {
+        if (windowBaseCounts == null)
+            return 0;
+        int windowCount = windowBaseCounts.length;
+        while (windowCount > 0 && windowBaseCounts[windowCount - 1] == 0)
+            windowCount--;
+        return windowCount;
+    }
+
+    /**
+     * Get the GC content of a window: the percentage of G and C among the A, C, G, and T bases in the window.
+     *
+     * @param windowIndex the window index; window i covers the bases from i * windowSize to (i + 1) * windowSize.
+     * @return the GC content, or NaN if the window has no A, C, G, or T bases.
+     */
+    public double getWindowGcContent(final int windowIndex) {
+        return (100.0 * windowGcCounts[windowIndex]) / windowBaseCounts[windowIndex];
+    }
+
+    /**
+     * Get the count of a k-mer.
+     *
+     * @param kmerText the k-mer, for example "ACG".
+     * @return the number of occurrences.
+     */
+    public long getKmerCount(final String kmerText) {
+        if (kmerText.length() != kmerLength)
+            throw new IllegalArgumentException("K-mer length should be " + kmerLength + ": " + kmerText);
+        long packedKmer = 0;
+        for (int index = 0; index < kmerText.length(); index++) {
+            final int baseIndex = BASES.indexOf(kmerText.charAt(index));
+            if (baseIndex == -1)
+                return 0;
+            packedKmer = (packedKmer << 2) | baseIndex;
+        }
+        return denseKmerCounts != null ? denseKmerCounts[(int) packedKmer] : kmerCounts.get(packedKmer);
+    }
+
+    /**
+     * Get the most frequent k-mers.
+     *
+     * @param topCount the maximum number of k-mers.
+     * @return the k-mers with their counts ("ACG: 12"), by descending count and then alphabetically.
+     */
+    public List<String> getTopKmers(final int topCount) {
+        final List<long[]> kmerAndCounts = new ArrayList<>();
+        if (denseKmerCounts != null) {
+            for (int kmerIndex = 0; kmerIndex < denseKmerCounts.length; kmerIndex++)
+                if (denseKmerCounts[kmerIndex] > 0)
+                    kmerAndCounts.add(new long[]{kmerIndex, denseKmerCounts[kmerIndex]});
+        } else if (kmerCounts != null)
+            kmerCounts.forEach((packedKmer, count) -> kmerAndCounts.add(new long[]{packedKmer, count}));
+        kmerAndCounts.sort((kmerAndCount1, kmerAndCount2) -> kmerAndCount1[1] != kmerAndCount2[1]
+                                                             ? Long.compare(kmerAndCount2[1], kmerAndCount1[1])
+                                                             : Long.compare(kmerAndCount1[0], kmerAndCount2[0]));
+        final List<String> topKmers = new ArrayList<>();
+        for (final long[] kmerAndCount : kmerAndCounts.subList(0, Math.min(topCount, kmerAndCounts.size())))
+            topKmers.add(unpack(kmerAndCount[0]) + ": " + kmerAndCount[1]);
+        return topKmers;
+    }
+
+    public void printStatistics() {
+        System.out.println("A: " + counts[0] + ", C: " + counts[1] + ", G: " + counts[2] + ", T: " + counts[3]);
+        if (otherCount > 0 || headerCount > 0)
+            System.out.println("Other characters: " + otherCount + ", sequences: " + headerCount);
+        System.out.println("GC-content: " + getGcContent() + "%");
+        final int windowCount = getWindowCount();
+        if (windowCount > 0) {
+            int lowestWindow = -1;
+            int highestWindow = -1;
+            for (int windowIndex = 0; windowIndex < windowCount; windowIndex++)
+                if (windowBaseCounts[windowIndex] > 0) {
+                    if (lowestWindow == -1 || getWindowGcContent(windowIndex) < getWindowGcContent(lowestWindow))
+                        lowestWindow = windowIndex;
+                    if (highestWindow == -1 || getWindowGcContent(windowIndex) > getWindowGcContent(highestWindow))
+                        highestWindow = windowIndex;
+                }
+            System.out.println("Windows of " + windowSize + " bases: " + windowCount + ", lowest GC-content "
+                               + formatWindow(lowestWindow) + ", highest GC-content " + formatWindow(highestWindow));
+        }
+        if (kmerLength > 0)
+            System.out.println("Most frequent " + kmerLength + "-mers: " + getTopKmers(10));
+    }
+
+    /**
+     * Print the GC content of every window, one tab-separated line per window: the first base, the end (exclusive),
+     * and the GC content.
+     */
+    public void printWindows() {
+        for (int windowIndex = 0; windowIndex < getWindowCount(); windowIndex++)
+            System.out.println((long) windowIndex * windowSize + "\t" + (long) (windowIndex + 1) * windowSize + "\t"
+                               + String.format("%.2f", getWindowGcContent(windowIndex)));
+    }
+
+    private static byte[] createBaseCodes() {
+        final byte[] baseCodes = new byte[256];
+        Arrays.fill(baseCodes, OTHER);
+        for (int baseIndex = 0; baseIndex < BASES.length(); baseIndex++) {
+            baseCodes[BASES.charAt(baseIndex)] = (byte) baseIndex;
+            baseCodes[Character.toLowerCase(BASES.charAt(baseIndex))] = (byte) baseIndex;
+        }
+        baseCodes['\n'] = NEWLINE;
+        baseCodes['\r'] = CARRIAGE_RETURN;
+        baseCodes['>'] = HEADER_START;
+        return baseCodes;
+    }
+
+    private void process(final int characterCode) {
+        if (inHeader) {
+            inHeader = characterCode != NEWLINE;
+            lineStart = !inHeader;
+            return;
+        }
+        if (characterCode == HEADER_START && lineStart) {
+            inHeader = true;
+            kmerBaseCount = 0;
+            if (kmerLookahead < 0)
+                headerCount++;
+            return;
+        }
+        lineStart = characterCode == NEWLINE;
+        if (characterCode == NEWLINE || characterCode == CARRIAGE_RETURN)
+            return;
+        // A '>' inside a line is just another character.
+        final int code = characterCode == HEADER_START ? OTHER : characterCode;
+        if (code < OTHER) {
+            kmer = ((kmer << 2) | code) & kmerMask;
+            if (++kmerBaseCount >= kmerLength && kmerLength > 0)
+                countKmer();
+        } else
+            kmerBaseCount = 0;
+        if (kmerLookahead >= 0) {
+            kmerLookahead--;
+            return;
+        }
+        if (code < OTHER)
+            counts[code]++;
+        else
+            otherCount++;
+        if (windowSize > 0)
+            countInWindow(code);
+    }
+
+    private void countKmer() {
+        if (denseKmerCounts != null)
+            denseKmerCounts[(int) kmer]++;
+        else
+            kmerCounts.increment(kmer);
+    }
+
+    private void countInWindow(final int code) {
+        if (code < OTHER) {
+            windowBaseCounts[window]++;
+            if (code == 1 || code == 2)
+                windowGcCounts[window]++;
+        }
+        if (--windowRemaining == 0) {
+            window++;
+            windowRemaining = windowSize;
+            ensureWindowCapacity(window);
+        }
+    }
+
+    private void ensureWindowCapacity(final int windowIndex) {
+        if (windowIndex >= windowBaseCounts.length) {
+            final int capacity = Math.max(windowIndex + 1, 2 * windowBaseCounts.length);
+            windowBaseCounts = Arrays.copyOf(windowBaseCounts, capacity);
+            windowGcCounts = Arrays.copyOf(windowGcCounts, capacity);
+        }
+    }
+
+    private String unpack(final long packedKmer) {
+        final char[] bases = new char[kmerLength];
+        for (int index = kmerLength - 1, shift = 0; index >= 0; index--, shift += 2)
+            bases[index] = BASES.charAt((int) (packedKmer >>> shift) & 3);
+        return new String(bases);
+    }
+
+    private String formatWindow(final int windowIndex) {
+        return String.format("%.2f%% at %d-%d", getWindowGcContent(windowIndex), (long) windowIndex * windowSize,
+                             (long) (windowIndex + 1) * windowSize);
     }
 }
@@ -0,0 +1,178 @@
+package com.github.freekdb.groovy_and_java_8.introduction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Analyzer for FASTA files of many gigabytes, which collects DnaStatistics in parallel. The file is split into chunks
+ * that start at the beginning of a line (or, for very long lines like unwrapped chromosomes, in the middle of a
+ * sequence line); every chunk is memory-mapped and processed by a fork-join worker with its own partial statistics,
+ * and the partials are combined like a stream collector.
+ * <p>
+ * Two things cross the chunk boundaries. Windows use global base positions, so when windows are requested a first
+ * parallel pass counts the bases per chunk, and the prefix sums give the position where every chunk starts. K-mers
+ * that span a boundary are counted by the chunk in which they start: after its own bytes, a chunk continues reading
+ * the next bytes for k - 1 more bases, only to count those k-mers.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class FastaAnalyzer {
+    private static final long CHUNK_SIZE = 1 << 26;
+    private static final int LOOKAHEAD_SIZE = 1 << 12;
+    private static final int SCAN_BUFFER_SIZE = 1 << 13;
+    private static final int MAXIMUM_LINE_SCAN = 1 << 20;
+
+    private final FileChannel channel;
+    private final long[] chunkStarts;
+    private final boolean[] chunkLineStarts;
+
+    private FastaAnalyzer(final FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.chunkStarts = splitIntoChunks();
+        this.chunkLineStarts = new boolean[chunkStarts.length - 1];
+        for (int chunk = 0; chunk < chunkLineStarts.length; chunk++)
+            chunkLineStarts[chunk] = chunk == 0 || readByte(chunkStarts[chunk] - 1) == '\n';
+    }
+
+    /**
+     * Main method.
+     *
+     * @param arguments command-line arguments: the FASTA file, optionally followed by "--kmer k" for the k-mer counts,
+     *                  "--window size" for the GC content per window, and "--print-windows" to print every window.
+     * @throws IOException if the file cannot be read.
+     */
+    public static void main(final String[] arguments) throws IOException {
+        final List<String> options = Arrays.asList(arguments);
+        final int kmerIndex = options.indexOf("--kmer");
+        final int windowIndex = options.indexOf("--window");
+        final int kmerLength = kmerIndex != -1 ? Integer.parseInt(options.get(kmerIndex + 1)) : 0;
+        final int windowSize = windowIndex != -1 ? Integer.parseInt(options.get(windowIndex + 1)) : 0;
+        final long start = System.currentTimeMillis();
+        final DnaStatistics statistics = analyze(Paths.get(arguments[0]), kmerLength, windowSize);
+        final long duration = System.currentTimeMillis() - start;
+        statistics.printStatistics();
+        if (options.contains("--print-windows"))
+            statistics.printWindows();
+        final long size = Paths.get(arguments[0]).toFile().length();
+        System.out.println(String.format("Analyzed %d bytes in %.3f seconds (%.0f MB/s).", size, duration / 1000.0,
+                                         size / 1e3 / Math.max(1, duration)));
+    }
+
+    /**
+     * Analyze a FASTA file in parallel.
+     *
+     * @param filePath   the FASTA file path.
+     * @param kmerLength the k-mer length (1 to 31), or 0 to skip the k-mer counts.
+     * @param windowSize the number of bases per window, or 0 to skip the windows.
+     * @return the statistics.
+     * @throws IOException if the file cannot be read.
+     */
+    public static DnaStatistics analyze(final Path filePath, final int kmerLength, final int windowSize)
+        throws IOException {
+        try (final FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            return new FastaAnalyzer(channel).analyze(kmerLength, windowSize);
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private DnaStatistics analyze(final int kmerLength, final int windowSize) {
+        final int chunkCount = chunkStarts.length - 1;
+        final long[] basePositions = new long[chunkCount];
+        if (windowSize > 0) {
+            final long[] baseCounts = IntStream.range(0, chunkCount).parallel()
+                .mapToLong(chunk -> DnaStatistics.countBases(map(chunk), 0, getChunkSize(chunk),
+                                                             chunkLineStarts[chunk]))
+                .toArray();
+            for (int chunk = 1; chunk < chunkCount; chunk++)
+                basePositions[chunk] = basePositions[chunk - 1] + baseCounts[chunk - 1];
+        }
+        return IntStream.range(0, chunkCount).parallel()
+            .collect(() -> new DnaStatistics(kmerLength, windowSize),
+                     (statistics, chunk) -> analyzeChunk(statistics, chunk, basePositions[chunk]),
+                     DnaStatistics::combine);
+    }
+
+    private void analyzeChunk(final DnaStatistics statistics, final int chunk, final long basePosition) {
+        statistics.startChunk(basePosition, chunkLineStarts[chunk]);
+        statistics.accept(map(chunk), 0, getChunkSize(chunk));
+        long lookaheadPosition = chunkStarts[chunk + 1];
+        final long size = chunkStarts[chunkStarts.length - 1];
+        boolean complete = false;
+        while (!complete && lookaheadPosition < size) {
+            final int lookaheadSize = (int) Math.min(LOOKAHEAD_SIZE, size - lookaheadPosition);
+            complete = statistics.acceptLookahead(map(lookaheadPosition, lookaheadSize), 0, lookaheadSize);
+            lookaheadPosition += lookaheadSize;
+        }
+    }
+
+    private int getChunkSize(final int chunk) {
+        return (int) (chunkStarts[chunk + 1] - chunkStarts[chunk]);
+    }
+
+    private MappedByteBuffer map(final int chunk) {
+        return map(chunkStarts[chunk], getChunkSize(chunk));
+    }
+
+    private MappedByteBuffer map(final long position, final int size) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte readByte(final long position) throws IOException {
+        final ByteBuffer byteBuffer = ByteBuffer.allocate(1);
+        channel.read(byteBuffer, position);
+        return byteBuffer.get(0);
+    }
+
+    /**
+     * Split the file into chunks of about CHUNK_SIZE bytes (and at least a few per worker thread), which start at the
+     * beginning of a line unless there is no line start within MAXIMUM_LINE_SCAN bytes.
+     *
+     * @return the start positions of the chunks, followed by the file size.
+     * @throws IOException if the file cannot be read.
+     */
+    private long[] splitIntoChunks() throws IOException {
+        final long size = channel.size();
+        final long chunkCount = Math.max(4L * Runtime.getRuntime().availableProcessors(),
+                                         (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        final long[] starts = new long[(int) chunkCount + 1];
+        final ByteBuffer scanBuffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        int startCount = 1;
+        for (int chunk = 1; chunk < chunkCount; chunk++) {
+            final long lineStart = findLineStart(Math.max(starts[startCount - 1], chunk * (size / chunkCount)), size,
+                                                 scanBuffer);
+            if (lineStart > starts[startCount - 1] && lineStart < size)
+                starts[startCount++] = lineStart;
+        }
+        starts[startCount++] = size;
+        return Arrays.copyOf(starts, startCount);
+    }
+
+    private long findLineStart(final long from, final long size, final ByteBuffer scanBuffer) throws IOException {
+        long scanPosition = Math.max(0, from - 1);
+        while (scanPosition < Math.min(size, from + MAXIMUM_LINE_SCAN)) {
+            scanBuffer.clear();
+            final int byteCount = channel.read(scanBuffer, scanPosition);
+            if (byteCount <= 0)
+                break;
+            for (int index = 0; index < byteCount; index++)
+                if (scanBuffer.get(index) == '\n')
+                    return scanPosition + index + 1;
+            scanPosition += byteCount;
+        }
+        return Math.min(from, size);
+    }
+}
@@ -8,6 +8,7 @@ import java.util.IntSummaryStatistics;
 import java.util.List;
 import java.util.Random;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 /**
  * Class with a short introduction to streams and pipelines in Java 8.
@@ -55,20 +56,77 @@ public class Introduction {
     private void randomNumberStream() {
         final int randomSeed = 1234567890;
         final int numberCount = 100000;
+        final long startPipeline = System.currentTimeMillis();
+        final BigObject manyAddedNumbers = addRandomNumbers(randomSeed, numberCount);
+        final long durationPipeline = System.currentTimeMillis() - startPipeline;
+        System.out.println();
+        System.out.println("Many added numbers: " + manyAddedNumbers.getBigNumber());
+        System.out.println("Runtime number pipeline: " + (durationPipeline / 1000.0) + " seconds.");
+
+        for (final boolean parallel : new boolean[]{false, true}) {
+            final long startPrimitive = System.currentTimeMillis();
+            final LongSum summedNumbers = sumRandomNumbers(randomSeed, numberCount, 1000000, parallel);
+            final long durationPrimitive = System.currentTimeMillis() - startPrimitive;
+            System.out.println("Summed numbers (" + (parallel ? "parallel" : "sequential") + " primitive pipeline): "
+                               + summedNumbers.toBigObject().getBigNumber() + " in " + (durationPrimitive / 1000.0)
+                               + " seconds.");
+        }
+        System.out.println("======");
+    }
+
+    /**
+     * Add random numbers by boxing each number and wrapping it in a BigObject.
+     *
+     * @param randomSeed  the seed for the random number generator.
+     * @param numberCount the number of random numbers.
+     * @return the sum of the random numbers.
+     */
+    static BigObject addRandomNumbers(final int randomSeed, final int numberCount) {
         final int maximumNumber = 1000000;
         final Random randomGenerator = new Random(randomSeed);
-        final long startPipeline = System.currentTimeMillis();
-        final BigObject manyAddedNumbers = randomGenerator.longs(numberCount, 0, maximumNumber)
+        return randomGenerator.longs(numberCount, 0, maximumNumber)
             .boxed()
             .map(BigObject::new)
             //.sorted()
             //.distinct()
             .reduce(BigObject.ZERO, BigObject::add);
-        final long durationPipeline = System.currentTimeMillis() - startPipeline;
-        System.out.println();
-        System.out.println("Many added numbers: " + manyAddedNumbers.getBigNumber());
-        System.out.println("Runtime number pipeline: " + (durationPipeline / 1000.0) + " seconds.");
-        System.out.println("======");
+    }
+
+    /**
+     * Add random numbers without boxing: the primitive longs are collected into a mutable LongSum, with a partial sum
+     * per thread when the stream is parallel. The numbers are generated from their index (see randomNumber) instead of
+     * by a shared Random, so the threads do not contend and the sum does not depend on how the stream is split.
+     *
+     * @param randomSeed    the seed for the random numbers.
+     * @param numberCount   the number of random numbers.
+     * @param maximumNumber the upper bound (exclusive) of the random numbers.
+     * @param parallel      whether the stream should be parallel.
+     * @return the sum of the random numbers.
+     */
+    static LongSum sumRandomNumbers(final int randomSeed, final long numberCount, final long maximumNumber,
+                                    final boolean parallel) {
+        final LongStream indices = LongStream.range(0, numberCount);
+        return (parallel ? indices.parallel() : indices)
+            .map(index -> randomNumber(randomSeed, index, maximumNumber))
+            .collect(LongSum::new, LongSum::accept, LongSum::combine);
+    }
+
+    /**
+     * Get the random number with an index, which is the value with that index of the SplitMix64 generator (the
+     * algorithm behind SplittableRandom): the seed plus index times the golden gamma, mixed with the Stafford variant
+     * 13 finalizer.
+     *
+     * @param randomSeed    the seed for the random numbers.
+     * @param index         the index of the number.
+     * @param maximumNumber the upper bound (exclusive) of the random number.
+     * @return the random number, between zero (inclusive) and maximumNumber (exclusive).
+     */
+    static long randomNumber(final long randomSeed, final long index, final long maximumNumber) {
+        long mixed = randomSeed + (index + 1) * 0x9E3779B97F4A7C15L;
+        mixed = (mixed ^ (mixed >>> 30)) * 0xBF58476D1CE4E5B9L;
+        mixed = (mixed ^ (mixed >>> 27)) * 0x94D049BB133111EBL;
+        mixed ^= mixed >>> 31;
+        return (mixed >>> 1) % maximumNumber;
     }
 
     /**
@@ -0,0 +1,83 @@
+package com.github.freekdb.groovy_and_java_8.introduction;
+
+import java.math.BigInteger;
+
+/**
+ * Mutable accumulator that adds up primitive longs without boxing and without overflow. The sum is kept in a long; when
+ * an addition overflows, the wrapped-around long is still correct modulo 2^64 and an overflow counter records the lost
+ * multiple of 2^64, so the exact sum is overflowCount * 2^64 + sum. A BigInteger is only created for the result.
+ * <p>
+ * The accumulator has the supplier/accumulator/combiner shape of LongStream.collect, so parallel streams give every
+ * thread its own partial sum and merge the partials:
+ * {@code longStream.parallel().collect(LongSum::new, LongSum::accept, LongSum::combine)}.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+class LongSum {
+    private long sum;
+    private long overflowCount;
+    private long count;
+
+    public LongSum() {
+    }
+
+    public void accept(final long value) {
+        add(value);
+        count++;
+    }
+
+    public void combine(final LongSum other) {
+        overflowCount += other.overflowCount;
+        count += other.count;
+        add(other.sum);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Check whether the sum fits in a long.
+     *
+     * @return whether getSum returns the exact sum.
+     */
+    public boolean fitsInLong() {
+        return overflowCount == 0;
+    }
+
+    /**
+     * Get the sum as a long.
+     *
+     * @return the exact sum.
+     * @throws ArithmeticException if the sum does not fit in a long.
+     */
+    public long getSum() {
+        if (overflowCount != 0)
+            throw new ArithmeticException("Sum does not fit in a long: " + getBigSum());
+        return sum;
+    }
+
+    public BigInteger getBigSum() {
+        final BigInteger wrappedSum = BigInteger.valueOf(sum);
+        return overflowCount == 0 ? wrappedSum : BigInteger.valueOf(overflowCount).shiftLeft(64).add(wrappedSum);
+    }
+
+    /**
+     * Get the sum as a BigObject, the result type of the boxed reduction in Introduction.
+     *
+     * @return the sum.
+     */
+    public BigObject toBigObject() {
+        return new BigObject(getBigSum());
+    }
+
+    private void add(final long value) {
+        final long result = sum + value;
+        // The addition overflowed when both operands have another sign than the result (as in Math.addExact). The
+        // overflow mask is -1 or 0 and the direction is +1 or -1 (the sign of the value), so there is no branch to
+        // mispredict when overflows are frequent.
+        final long overflowMask = ((sum ^ result) & (value ^ result)) >> 63;
+        overflowCount -= overflowMask * ((value >> 63) | 1);
+        sum = result;
+    }
+}
@@ -0,0 +1,226 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index from actors to the movies they played in, built once from a movie store. The posting list of an
+ * actor is the sorted list of distinct movie ids, stored as variable-length encoded deltas (7 bits per byte, high bit
+ * set on all but the last byte of a delta) in one shared byte array. Lookups decode only the posting lists involved,
+ * so they do not scan the movies.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class ActorIndex {
+    private final MovieStore store;
+    private final int[] postingOffsets;
+    private final int[] postingSizes;
+    private final byte[] postings;
+
+    /**
+     * Build the index for all actors in a store.
+     *
+     * @param store the movie store.
+     */
+    public ActorIndex(final MovieStore store) {
+        this.store = store;
+        final int actorCount = store.getActorCount();
+        final int[] previousMovieIds = new int[actorCount];
+        postingOffsets = new int[actorCount + 1];
+        postingSizes = new int[actorCount];
+
+        // First pass: the number of bytes of each posting list.
+        Arrays.fill(previousMovieIds, -1);
+        for (int movieId = 0; movieId < store.getMovieCount(); movieId++)
+            for (int castPosition = store.getCastStart(movieId); castPosition < store.getCastEnd(movieId);
+                 castPosition++) {
+                final int actorId = store.getCastActorId(castPosition);
+                if (previousMovieIds[actorId] != movieId) {
+                    postingOffsets[actorId + 1] += getEncodedLength(movieId - previousMovieIds[actorId] - 1);
+                    postingSizes[actorId]++;
+                    previousMovieIds[actorId] = movieId;
+                }
+            }
+        for (int actorId = 0; actorId < actorCount; actorId++)
+            postingOffsets[actorId + 1] += postingOffsets[actorId];
+
+        // Second pass: encode the deltas (the gap minus one, since movie ids in a posting list are distinct).
+        postings = new byte[postingOffsets[actorCount]];
+        final int[] writePositions = Arrays.copyOf(postingOffsets, actorCount);
+        Arrays.fill(previousMovieIds, -1);
+        for (int movieId = 0; movieId < store.getMovieCount(); movieId++)
+            for (int castPosition = store.getCastStart(movieId); castPosition < store.getCastEnd(movieId);
+                 castPosition++) {
+                final int actorId = store.getCastActorId(castPosition);
+                if (previousMovieIds[actorId] != movieId) {
+                    writePositions[actorId] = encode(movieId - previousMovieIds[actorId] - 1, writePositions[actorId]);
+                    previousMovieIds[actorId] = movieId;
+                }
+            }
+    }
+
+    public MovieStore getStore() {
+        return store;
+    }
+
+    /**
+     * Get the number of movies of an actor.
+     *
+     * @param actorId the actor id.
+     * @return the number of distinct movies the actor played in.
+     */
+    public int getMovieCount(final int actorId) {
+        return postingSizes[actorId];
+    }
+
+    /**
+     * Get the movies of an actor.
+     *
+     * @param actorId the actor id.
+     * @return the sorted movie ids.
+     */
+    public int[] getMovies(final int actorId) {
+        final int[] movieIds = new int[postingSizes[actorId]];
+        final PostingCursor cursor = new PostingCursor(actorId);
+        for (int movieIndex = 0; cursor.next(); movieIndex++)
+            movieIds[movieIndex] = cursor.movieId;
+        return movieIds;
+    }
+
+    /**
+     * Get the movies of an actor.
+     *
+     * @param actorName the actor name, formatted as "Last, First".
+     * @return the sorted movie ids (empty for an unknown actor).
+     */
+    public int[] getMovies(final String actorName) {
+        final int actorId = store.getActorId(actorName);
+        return actorId != -1 ? getMovies(actorId) : new int[0];
+    }
+
+    /**
+     * Get the movies in which two actors both played, by intersecting their posting lists.
+     *
+     * @param actorId1 the first actor id.
+     * @param actorId2 the second actor id.
+     * @return the sorted movie ids.
+     */
+    public int[] getMoviesWithBoth(final int actorId1, final int actorId2) {
+        final int[] movieIds = new int[Math.min(postingSizes[actorId1], postingSizes[actorId2])];
+        int movieCount = 0;
+        final PostingCursor cursor1 = new PostingCursor(actorId1);
+        final PostingCursor cursor2 = new PostingCursor(actorId2);
+        boolean more = cursor1.next() && cursor2.next();
+        while (more) {
+            if (cursor1.movieId < cursor2.movieId)
+                more = cursor1.next();
+            else if (cursor1.movieId > cursor2.movieId)
+                more = cursor2.next();
+            else {
+                movieIds[movieCount++] = cursor1.movieId;
+                more = cursor1.next() && cursor2.next();
+            }
+        }
+        return Arrays.copyOf(movieIds, movieCount);
+    }
+
+    /**
+     * Get the movies in which two actors both played.
+     *
+     * @param actorName1 the first actor name, formatted as "Last, First".
+     * @param actorName2 the second actor name, formatted as "Last, First".
+     * @return the sorted movie ids (empty if one of the actors is unknown).
+     */
+    public int[] getMoviesWithBoth(final String actorName1, final String actorName2) {
+        final int actorId1 = store.getActorId(actorName1);
+        final int actorId2 = store.getActorId(actorName2);
+        return actorId1 != -1 && actorId2 != -1 ? getMoviesWithBoth(actorId1, actorId2) : new int[0];
+    }
+
+    /**
+     * Count the movies of an actor that were released in a range of years.
+     *
+     * @param actorId   the actor id.
+     * @param firstYear the first year of the range (inclusive).
+     * @param lastYear  the last year of the range (inclusive).
+     * @return the number of movies of the actor in the year range.
+     */
+    public int countInYears(final int actorId, final int firstYear, final int lastYear) {
+        int movieCount = 0;
+        final PostingCursor cursor = new PostingCursor(actorId);
+        while (cursor.next()) {
+            final int year = store.getReleaseYear(cursor.movieId);
+            if (year >= firstYear && year <= lastYear)
+                movieCount++;
+        }
+        return movieCount;
+    }
+
+    /**
+     * Count the movies of an actor that were released in a range of years.
+     *
+     * @param actorName the actor name, formatted as "Last, First".
+     * @param firstYear the first year of the range (inclusive).
+     * @param lastYear  the last year of the range (inclusive).
+     * @return the number of movies of the actor in the year range (zero for an unknown actor).
+     */
+    public int countInYears(final String actorName, final int firstYear, final int lastYear) {
+        final int actorId = store.getActorId(actorName);
+        return actorId != -1 ? countInYears(actorId, firstYear, lastYear) : 0;
+    }
+
+    /**
+     * Get the size of the encoded posting lists.
+     *
+     * @return the number of bytes used by all posting lists.
+     */
+    public int getPostingsSize() {
+        return postings.length;
+    }
+
+    private static int getEncodedLength(final int value) {
+        int length = 1;
+        for (int remaining = value >>> 7; remaining != 0; remaining >>>= 7)
+            length++;
+        return length;
+    }
+
+    private int encode(final int value, final int position) {
+        int remaining = value;
+        int writePosition = position;
+        while ((remaining & ~0x7F) != 0) {
+            postings[writePosition++] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        postings[writePosition++] = (byte) remaining;
+        return writePosition;
+    }
+
+    /**
+     * Decoder for the posting list of one actor.
+     */
+    private class PostingCursor {
+        private int position;
+        private final int end;
+        private int movieId = -1;
+
+        PostingCursor(final int actorId) {
+            this.position = postingOffsets[actorId];
+            this.end = postingOffsets[actorId + 1];
+        }
+
+        boolean next() {
+            if (position >= end)
+                return false;
+            int delta = 0;
+            int shift = 0;
+            byte encodedByte;
+            do {
+                encodedByte = postings[position++];
+                delta |= (encodedByte & 0x7F) << shift;
+                shift += 7;
+            } while (encodedByte < 0);
+            movieId += delta + 1;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import com.github.freekdb.groovy_and_java_8.util.LongCounter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counter for the number of movies per actor per year. Actors get an int id the first time they are added, and the
+ * counts are kept in a LongCounter keyed on (actor id, year), so adding a known actor does not create any garbage.
+ *
+ * @param <A> the actor type (for example Actor or a name string).
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class ActorYearCounter<A> {
+    private final Map<A, Integer> actorIds = new HashMap<>();
+    private final List<A> actors = new ArrayList<>();
+    private final LongCounter counts = new LongCounter();
+
+    public void add(final A actor, final int year) {
+        counts.increment(LongCounter.compositeKey(getActorId(actor), year));
+    }
+
+    /**
+     * Add all counts of another counter to this counter; the actor ids of the other counter are mapped to ids of this
+     * counter. The actors that are new to this counter get their ids in the order in which the other counter first
+     * saw them (not in the hash order of its counts), so combining partial counters from left to right gives the same
+     * ids as counting everything in one loop.
+     *
+     * @param other the other counter.
+     */
+    public void combine(final ActorYearCounter<A> other) {
+        final int[] actorIdMapping = new int[other.actors.size()];
+        for (int otherActorId = 0; otherActorId < actorIdMapping.length; otherActorId++)
+            actorIdMapping[otherActorId] = getActorId(other.actors.get(otherActorId));
+        other.counts.forEach((key, count) -> counts.add(
+            LongCounter.compositeKey(actorIdMapping[LongCounter.highPart(key)], LongCounter.lowPart(key)), count));
+    }
+
+    public int getMaximumCount() {
+        return counts.getMaximumCount();
+    }
+
+    /**
+     * Get the actor and year combinations with the highest movie count (keeping ties), ordered by actor id (the order
+     * in which the actors were first added) and year.
+     *
+     * @return the most active actor and year combinations.
+     */
+    public List<ActorYear<A>> getMostActive() {
+        final int maximumCount = counts.getMaximumCount();
+        final List<ActorYear<A>> mostActive = new ArrayList<>();
+        for (final long key : counts.getMaximumKeys())
+            mostActive.add(new ActorYear<>(actors.get(LongCounter.highPart(key)), LongCounter.lowPart(key),
+                                           maximumCount));
+        return mostActive;
+    }
+
+    private int getActorId(final A actor) {
+        Integer actorId = actorIds.get(actor);
+        if (actorId == null) {
+            actorId = actors.size();
+            actorIds.put(actor, actorId);
+            actors.add(actor);
+        }
+        return actorId;
+    }
+
+    /**
+     * Actor, year, and the number of movies of the actor in that year.
+     *
+     * @param <A> the actor type.
+     */
+    public static class ActorYear<A> {
+        private final A actor;
+        private final int year;
+        private final int movieCount;
+
+        public ActorYear(final A actor, final int year, final int movieCount) {
+            this.actor = actor;
+            this.year = year;
+            this.movieCount = movieCount;
+        }
+
+        public A getActor() {
+            return actor;
+        }
+
+        public int getYear() {
+            return year;
+        }
+
+        public int getMovieCount() {
+            return movieCount;
+        }
+
+        @Override
+        public String toString() {
+            return actor + " in " + year;
+        }
+    }
+}
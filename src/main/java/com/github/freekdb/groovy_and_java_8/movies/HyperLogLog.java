@@ -0,0 +1,183 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch (Flajolet, Fusy, Gandouet, and Meunier) that estimates the number of distinct values in a few
+ * kilobytes. The sketch has 2^precision one-byte registers and a standard error of about 1.04 / sqrt(2^precision):
+ * precision 14 uses 16 KB for an error of 0.8%. Values are hashed to 64 bits, so there is no large-range correction.
+ * Sketches with the same precision can be merged (also across files, by
+ * storing them with toByteArray), and the merged sketch equals the sketch of all values.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class HyperLogLog {
+    public static final int DEFAULT_PRECISION = 14;
+    private static final int MINIMUM_PRECISION = 4;
+    private static final int MAXIMUM_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Create an empty sketch.
+     *
+     * @param precision the number of hash bits that select a register (4 to 18).
+     */
+    public HyperLogLog(final int precision) {
+        if (precision < MINIMUM_PRECISION || precision > MAXIMUM_PRECISION)
+            throw new IllegalArgumentException("Precision should be between " + MINIMUM_PRECISION + " and "
+                                               + MAXIMUM_PRECISION + ": " + precision);
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Create an empty sketch with the lowest precision that has at most the requested standard error.
+     *
+     * @param standardError the standard error (for example 0.01 for 1%).
+     * @return the sketch.
+     */
+    public static HyperLogLog withStandardError(final double standardError) {
+        int precision = MINIMUM_PRECISION;
+        while (precision < MAXIMUM_PRECISION && getStandardError(precision) > standardError)
+            precision++;
+        return new HyperLogLog(precision);
+    }
+
+    /**
+     * Restore a sketch that was stored with toByteArray.
+     *
+     * @param bytes the stored sketch.
+     * @return the sketch.
+     */
+    public static HyperLogLog fromByteArray(final byte[] bytes) {
+        final HyperLogLog sketch = new HyperLogLog(bytes[0]);
+        if (bytes.length != 1 + sketch.registers.length)
+            throw new IllegalArgumentException("Invalid sketch length: " + bytes.length);
+        System.arraycopy(bytes, 1, sketch.registers, 0, sketch.registers.length);
+        return sketch;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public double getStandardError() {
+        return getStandardError(precision);
+    }
+
+    public void add(final String value) {
+        // 64-bit FNV-1a over the chars; the final mixing step in addHash spreads the bits.
+        long hash = 0xCBF29CE484222325L;
+        for (int index = 0; index < value.length(); index++)
+            hash = (hash ^ value.charAt(index)) * 0x100000001B3L;
+        addHash(hash);
+    }
+
+    public void add(final long value) {
+        addHash(value);
+    }
+
+    /**
+     * Merge another sketch into this sketch.
+     *
+     * @param other the other sketch, which should have the same precision.
+     */
+    public void combine(final HyperLogLog other) {
+        if (other.precision != precision)
+            throw new IllegalArgumentException("Cannot merge precision " + other.precision + " into " + precision);
+        for (int index = 0; index < registers.length; index++)
+            if (other.registers[index] > registers[index])
+                registers[index] = other.registers[index];
+    }
+
+    /**
+     * Estimate the number of distinct values that were added, with the improved estimator of Otmar Ertl ("New
+     * cardinality estimation algorithms for HyperLogLog sketches", 2017), which needs no bias correction tables and
+     * no switch to linear counting for small cardinalities.
+     *
+     * @return the estimated cardinality.
+     */
+    public long estimate() {
+        final int registerCount = registers.length;
+        final int maximumRank = 64 - precision;
+        final int[] rankCounts = new int[maximumRank + 2];
+        for (final byte register : registers)
+            rankCounts[register]++;
+        double denominator = registerCount * tau(1 - (double) rankCounts[maximumRank + 1] / registerCount);
+        for (int rank = maximumRank; rank >= 1; rank--)
+            denominator = 0.5 * (denominator + rankCounts[rank]);
+        denominator += registerCount * sigma((double) rankCounts[0] / registerCount);
+        return Math.round(registerCount * registerCount / (2 * Math.log(2)) / denominator);
+    }
+
+    public byte[] toByteArray() {
+        final byte[] bytes = new byte[1 + registers.length];
+        bytes[0] = (byte) precision;
+        System.arraycopy(registers, 0, bytes, 1, registers.length);
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(final Object that) {
+        return that instanceof HyperLogLog && Arrays.equals(registers, ((HyperLogLog) that).registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(registers);
+    }
+
+    private static double getStandardError(final int precision) {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    private static double sigma(final double x) {
+        if (x == 1)
+            return Double.POSITIVE_INFINITY;
+        double power = x;
+        double factor = 1;
+        double sum = x;
+        double previousSum;
+        do {
+            power *= power;
+            previousSum = sum;
+            sum += power * factor;
+            factor += factor;
+        } while (sum != previousSum);
+        return sum;
+    }
+
+    private static double tau(final double x) {
+        if (x == 0 || x == 1)
+            return 0;
+        double root = x;
+        double factor = 1;
+        double sum = 1 - x;
+        double previousSum;
+        do {
+            root = Math.sqrt(root);
+            previousSum = sum;
+            factor *= 0.5;
+            sum -= (1 - root) * (1 - root) * factor;
+        } while (sum != previousSum);
+        return sum / 3;
+    }
+
+    private void addHash(final long value) {
+        long hash = value;
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        final int index = (int) (hash >>> (64 - precision));
+        // The sentinel bit limits the rank to 64 - precision + 1 when all remaining bits are zero.
+        final int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index])
+            registers[index] = (byte) rank;
+    }
+}
@@ -1,19 +1,26 @@
 package com.github.freekdb.groovy_and_java_8.movies;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- * Class with movie queries, comparing Java 7 versus Java 8 style.
+ * Class with movie queries, comparing Java 7 versus Java 8 style. By default the queries are answered by one shared
+ * scan of the query engine and only the engine results are printed (with the actor index and cube queries); with
+ * --compare, the Java 7, Java 8, and columnar variants are printed as well, each with its own scan.
  * <p>
  * Thanks to:
  * - José Paumard (http://blog.paumard.org/en/) from Université Paris 13 for all the great Java 8 examples with movies
@@ -40,38 +47,170 @@ import java.util.stream.Collectors;
  * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
  */
 public class JavaMovieQueries {
+    private static final int MAXIMUM_CACHED_RESULTS = 256;
+    private static final long MAXIMUM_CACHE_DISK_SIZE = 1 << 24;
+
+    private QueryResultCache cache;
+    private String fingerprint;
+    private boolean compareVariants;
+
     /**
      * Main method.
      *
-     * @param arguments unused command-line arguments.
+     * @param arguments command-line arguments: "--no-cache" to compute every query result instead of using the query
+     *                  result cache, "--compare" to also run the Java 7, Java 8, and columnar variants of the queries,
+     *                  and "--refresh count" to repeat the queries a number of times afterwards (like a dashboard that
+     *                  is refreshed) and print how long every refresh takes.
      */
     public static void main(final String[] arguments) {
-        new JavaMovieQueries().runQueries();
+        final List<String> options = Arrays.asList(arguments);
+        final int refreshIndex = options.indexOf("--refresh");
+        final int refreshCount = refreshIndex != -1 ? Integer.parseInt(options.get(refreshIndex + 1)) : 0;
+        new JavaMovieQueries().runQueries(!options.contains("--no-cache"), options.contains("--compare"),
+                                          refreshCount);
     }
 
     /**
-     * Compare several queries on a movies list using Java 7 versus Java 8 style.
+     * Run several queries on the movies. By default the queries are answered by one shared scan of the query engine;
+     * when comparing, every query also runs in Java 7 and Java 8 style on a movies list and on a columnar movie store
+     * (one scan per variant).
+     * <p>
+     * The fingerprint of the movies file is determined first. The movie store, the movies list, the shared scan, the
+     * actor index, and the cube are only created when a query needs them, so a run in which every result is cached
+     * does not read the movies at all.
+     *
+     * @param cacheResults    whether to cache the query results by the fingerprint of the movies file.
+     * @param compareVariants whether to run the Java 7, Java 8, and columnar variants as well.
+     * @param refreshCount    the number of times to repeat the queries afterwards.
      */
-    private void runQueries() {
+    private void runQueries(final boolean cacheResults, final boolean compareVariants, final int refreshCount) {
         final String filePath = "data/movies-mpaa.txt";
         //final String filePath = "data/movies-mpaa-test.txt";
-        final List<Movie> movies = readMoviesAndActors(filePath);
-        final Set<Actor> actors = movies.stream().flatMap(movie -> movie.getActors().stream()).collect(Collectors.toSet());
-        System.out.println("Total number of actors: " + actors.size() + ".");
+        if (cacheResults)
+            cache = new QueryResultCache(MAXIMUM_CACHED_RESULTS,
+                                         QueryResultCache.getCacheDirectory(Paths.get(filePath)),
+                                         MAXIMUM_CACHE_DISK_SIZE);
+        this.compareVariants = compareVariants;
+        updateFingerprint(filePath);
+        final Supplier<MovieStore> store = memoize(() -> readMovieStore(filePath));
+        final Supplier<List<Movie>> movies = memoize(() -> readMovies(filePath));
+        final Supplier<EngineQueries> engineQueries = memoize(() -> {
+            final EngineQueries queries = new EngineQueries();
+            queries.engine.run(movies.get(), true);
+            return queries;
+        });
+        System.out.println("Total number of movies: "
+                           + cached("movieCount", () -> String.valueOf(store.get().getMovieCount())) + ".");
+        System.out.println("Total number of actors: "
+                           + cached("actorCount.engine", () -> String.valueOf(engineQueries.get().actors.get().size()))
+                           + ".");
+        System.out.println("Approximate number of actors: "
+                           + cached("actorCount.approximate",
+                                    () -> String.valueOf(engineQueries.get().actorSketch.get().estimate())) + ".");
 
-        printYearWithMostMovies(movies);
-        printMostActiveActor(movies);
-        printMostActiveActorInSingleYear(movies, actors);
+        printYearWithMostMovies(movies, store, engineQueries);
+        printMostActiveActor(movies, store, engineQueries);
+        printMostActiveActorInSingleYear(movies, store, engineQueries);
+        printActorLookups(memoize(() -> new ActorIndex(store.get())));
+        printCubeQueries(memoize(() -> new YearActorCube(store.get())));
+        refreshQueries(filePath, movies, store, engineQueries, refreshCount);
+    }
+
+    /**
+     * Create a supplier that calls another supplier on its first call and returns the same value on later calls.
+     *
+     * @param supplier the supplier of the value (which should not be null).
+     * @param <T>      the value type.
+     * @return the memoizing supplier.
+     */
+    private static <T> Supplier<T> memoize(final Supplier<T> supplier) {
+        final AtomicReference<T> value = new AtomicReference<>();
+        return () -> {
+            if (value.get() == null)
+                value.set(supplier.get());
+            return value.get();
+        };
+    }
+
+    /**
+     * Repeat the cached queries like a dashboard that is refreshed, and print the time per refresh. Every refresh
+     * checks the fingerprint of the movies file again, so a changed file is noticed.
+     *
+     * @param filePath     the input file path.
+     * @param movies        the movies, which are only read when a result is not cached.
+     * @param store         the movie store, which is only read when a result is not cached.
+     * @param engineQueries the queries of the shared scan, which only runs when a result is not cached.
+     * @param refreshCount  the number of refreshes.
+     */
+    private void refreshQueries(final String filePath, final Supplier<List<Movie>> movies,
+                                final Supplier<MovieStore> store, final Supplier<EngineQueries> engineQueries,
+                                final int refreshCount) {
+        if (refreshCount > 0)
+            System.out.println();
+        for (int refresh = 1; refresh <= refreshCount; refresh++) {
+            final long start = System.nanoTime();
+            updateFingerprint(filePath);
+            final List<String> results = new ArrayList<>();
+            results.addAll(queryYearWithMostMovies(movies, store, engineQueries));
+            results.addAll(queryMostActiveActor(movies, store, engineQueries));
+            results.addAll(queryMostActiveActorInSingleYear(movies, store, engineQueries));
+            System.out.println(String.format("Refresh %d: %d query results in %.1f microseconds.", refresh,
+                                             results.size(), (System.nanoTime() - start) / 1e3));
+        }
+        if (cache != null && refreshCount > 0)
+            System.out.println(cache);
+    }
+
+    private void updateFingerprint(final String filePath) {
+        if (cache != null)
+            try {
+                fingerprint = cache.fingerprint(Paths.get(filePath));
+            } catch (final IOException e) {
+                e.printStackTrace();
+                fingerprint = null;
+            }
+    }
+
+    /**
+     * Run a query through the query result cache (when there is a cache and the file fingerprint is known).
+     *
+     * @param queryId the query identifier.
+     * @param query   the query.
+     * @return the query result.
+     */
+    private String cached(final String queryId, final Supplier<String> query) {
+        return cache != null && fingerprint != null ? cache.get(fingerprint, queryId, query) : query.get();
     }
 
     /**
      * Print the year in which the most movies were released (and the movie count). Expected answers: 1997, when 700
      * movies were released.
      *
-     * @param movies the movies.
+     * @param movies        the movies, which are only read when a result is not cached.
+     * @param store         the movie store, which is only read when a result is not cached.
+     * @param engineQueries the queries of the shared scan, which only runs when a result is not cached.
      */
-    private void printYearWithMostMovies(final List<Movie> movies) {
-        // Java 7 style.
+    private void printYearWithMostMovies(final Supplier<List<Movie>> movies, final Supplier<MovieStore> store,
+                                         final Supplier<EngineQueries> engineQueries) {
+        System.out.println();
+        queryYearWithMostMovies(movies, store, engineQueries).forEach(System.out::println);
+    }
+
+    private List<String> queryYearWithMostMovies(final Supplier<List<Movie>> movies, final Supplier<MovieStore> store,
+                                                 final Supplier<EngineQueries> engineQueries) {
+        final List<String> results = new ArrayList<>();
+        if (compareVariants) {
+            results.add("Java 7 - " + cached("yearWithMostMovies.java7", () -> yearWithMostMoviesJava7(movies.get())));
+            results.add("Java 8 - " + cached("yearWithMostMovies.java8", () -> yearWithMostMoviesJava8(movies.get())));
+            results.add("Columnar - " + cached("yearWithMostMovies.columnar",
+                                               () -> yearWithMostMoviesColumnar(store.get())));
+        }
+        results.add("Engine - " + cached("yearWithMostMovies.engine",
+                                         () -> engineQueries.get().formatYearWithMostMovies()));
+        return results;
+    }
+
+    String yearWithMostMoviesJava7(final List<Movie> movies) {
         final Map<Integer, Integer> yearToMovieCount = new HashMap<>();
         for (final Movie movie : movies) {
             final int year = movie.getReleaseYear();
@@ -86,28 +225,62 @@ public class JavaMovieQueries {
                 maximumMovieYear = year;
             }
         }
-        System.out.println();
-        System.out.println("Java 7 - maximum movie year: " + maximumMovieYear + ", when " + maximumMovieCount
-                           + " movies were released.");
+        return "maximum movie year: " + maximumMovieYear + ", when " + maximumMovieCount + " movies were released.";
+    }
 
-        // Java 8 style.
+    String yearWithMostMoviesJava8(final List<Movie> movies) {
         final Map.Entry<Integer, Long> yearAndCountEntry = movies.stream()
             .collect(Collectors.groupingBy(Movie::getReleaseYear, Collectors.counting()))
             .entrySet().stream()
             .max(Map.Entry.comparingByValue())
             .get();
-        System.out.println("Java 8 - maximum movie year: " + yearAndCountEntry.getKey()
-                           + ", when " + yearAndCountEntry.getValue() + " movies were released.");
+        return "maximum movie year: " + yearAndCountEntry.getKey() + ", when " + yearAndCountEntry.getValue()
+               + " movies were released.";
+    }
+
+    /**
+     * Columnar store version: count in an array indexed by year.
+     *
+     * @param store the movie store.
+     * @return the year with the most movies.
+     */
+    String yearWithMostMoviesColumnar(final MovieStore store) {
+        final int[] yearRange = getYearRange(store);
+        final int[] movieCounts = new int[yearRange[1] - yearRange[0] + 1];
+        for (int movieId = 0; movieId < store.getMovieCount(); movieId++)
+            movieCounts[store.getReleaseYear(movieId) - yearRange[0]]++;
+        final int maximumIndex = indexOfMaximum(movieCounts);
+        return "maximum movie year: " + (yearRange[0] + maximumIndex) + ", when " + movieCounts[maximumIndex]
+               + " movies were released.";
     }
 
     /**
      * Print the actor that has worked on the most movies. Expected answer: Frank Welker, who worked on 92 movies.
      *
-     * @param movies the movies.
+     * @param movies        the movies, which are only read when a result is not cached.
+     * @param store         the movie store, which is only read when a result is not cached.
+     * @param engineQueries the queries of the shared scan, which only runs when a result is not cached.
      */
     @SuppressWarnings("SpellCheckingInspection")
-    private void printMostActiveActor(final List<Movie> movies) {
-        // Java 7 style.
+    private void printMostActiveActor(final Supplier<List<Movie>> movies, final Supplier<MovieStore> store,
+                                      final Supplier<EngineQueries> engineQueries) {
+        System.out.println();
+        queryMostActiveActor(movies, store, engineQueries).forEach(System.out::println);
+    }
+
+    private List<String> queryMostActiveActor(final Supplier<List<Movie>> movies, final Supplier<MovieStore> store,
+                                              final Supplier<EngineQueries> engineQueries) {
+        final List<String> results = new ArrayList<>();
+        if (compareVariants) {
+            results.add("Java 7 - " + cached("mostActiveActor.java7", () -> mostActiveActorJava7(movies.get())));
+            results.add("Java 8 - " + cached("mostActiveActor.java8", () -> mostActiveActorJava8(movies.get())));
+            results.add("Columnar - " + cached("mostActiveActor.columnar", () -> mostActiveActorColumnar(store.get())));
+        }
+        results.add("Engine - " + cached("mostActiveActor.engine", () -> engineQueries.get().formatMostActiveActor()));
+        return results;
+    }
+
+    String mostActiveActorJava7(final List<Movie> movies) {
         final Map<Actor, Long> actorToMovieCount = new HashMap<>();
         for (final Movie movie : movies)
             for (final Actor actor : movie.getActors())
@@ -119,99 +292,331 @@ public class JavaMovieQueries {
                 maximumMovieCount = actorToMovieCount.get(actor);
                 mostProductiveActor = actor;
             }
-        System.out.println();
         if (mostProductiveActor != null)
-            System.out.println("Java 7 - most productive actor: " + mostProductiveActor.getFullName()
-                               + ", who worked on " + actorToMovieCount.get(mostProductiveActor) + " movies.");
+            return "most productive actor: " + mostProductiveActor.getFullName() + ", who worked on "
+                   + actorToMovieCount.get(mostProductiveActor) + " movies.";
         else
-            System.out.println("Java 7 - most productive actor not found?!?");
+            return "most productive actor not found?!?";
+    }
 
-        // Java 8 style.
+    String mostActiveActorJava8(final List<Movie> movies) {
         final Map.Entry<Actor, Long> actorAndCountEntry = movies.stream()
             .flatMap(movie -> movie.getActors().stream())
             .collect(Collectors.toMap(Function.identity(), actor -> 1L, (count1, count2) -> count1 + count2))
             .entrySet().stream()
             .max(Map.Entry.comparingByValue()).get();
-        System.out.println("Java 8 - most productive actor: " + actorAndCountEntry.getKey().getFullName()
-                           + ", who worked on " + actorAndCountEntry.getValue() + " movies.");
+        return "most productive actor: " + actorAndCountEntry.getKey().getFullName() + ", who worked on "
+               + actorAndCountEntry.getValue() + " movies.";
+    }
+
+    /**
+     * Columnar store version: count in an array indexed by actor id.
+     *
+     * @param store the movie store.
+     * @return the actor with the most movies.
+     */
+    String mostActiveActorColumnar(final MovieStore store) {
+        final int[] actorMovieCounts = new int[store.getActorCount()];
+        for (int castPosition = 0; castPosition < store.getCastSize(); castPosition++)
+            actorMovieCounts[store.getCastActorId(castPosition)]++;
+        final int mostProductiveActorId = indexOfMaximum(actorMovieCounts);
+        return "most productive actor: " + store.getActor(mostProductiveActorId).getFullName() + ", who worked on "
+               + actorMovieCounts[mostProductiveActorId] + " movies.";
     }
 
     /**
      * Print the actor that has worked on the most movies in a single year. Expected answer: Phil Hawn, who worked on 24
      * movies in 1999.
      *
-     * @param movies the movies.
-     * @param actors the actors.
+     * @param movies        the movies, which are only read when a result is not cached.
+     * @param store         the movie store, which is only read when a result is not cached.
+     * @param engineQueries the queries of the shared scan, which only runs when a result is not cached.
      */
     @SuppressWarnings("SpellCheckingInspection")
-    private void printMostActiveActorInSingleYear(final List<Movie> movies, final Set<Actor> actors) {
-        // Java 7 style.
-        final Map<Actor, Map<Long, Long>> actorToMoviePerYearCount = new HashMap<>();
+    private void printMostActiveActorInSingleYear(final Supplier<List<Movie>> movies,
+                                                  final Supplier<MovieStore> store,
+                                                  final Supplier<EngineQueries> engineQueries) {
+        System.out.println();
+        queryMostActiveActorInSingleYear(movies, store, engineQueries).forEach(System.out::println);
+    }
+
+    private List<String> queryMostActiveActorInSingleYear(final Supplier<List<Movie>> movies,
+                                                          final Supplier<MovieStore> store,
+                                                          final Supplier<EngineQueries> engineQueries) {
+        final List<String> results = new ArrayList<>();
+        if (compareVariants) {
+            results.add("Java 7 - " + cached("mostActiveActorInSingleYear.java7",
+                                             () -> mostActiveActorInSingleYearJava7(movies.get())));
+            results.add("Java 8 - " + cached("mostActiveActorInSingleYear.java8",
+                                             () -> mostActiveActorInSingleYearJava8(movies.get())));
+            results.add("Columnar - " + cached("mostActiveActorInSingleYear.columnar",
+                                               () -> mostActiveActorInSingleYearColumnar(store.get())));
+        }
+        results.add("Engine - " + cached("mostActiveActorInSingleYear.engine",
+                                         () -> engineQueries.get().formatMostActiveActorInSingleYear()));
+        return results;
+    }
+
+    /**
+     * Java 7 style, with a primitive counter keyed on (actor id, year).
+     *
+     * @param movies the movies.
+     * @return the actor with the most movies in a single year.
+     */
+    String mostActiveActorInSingleYearJava7(final List<Movie> movies) {
+        final ActorYearCounter<Actor> actorYearCounter = new ActorYearCounter<>();
         for (final Movie movie : movies)
-            for (final Actor actor : movie.getActors()) {
-                final Map<Long, Long> yearToMovieCount = actorToMoviePerYearCount.containsKey(actor)
-                                                         ? actorToMoviePerYearCount.get(actor) : new HashMap<>();
-                final long year = movie.getReleaseYear();
-                yearToMovieCount.put(year, 1 + (yearToMovieCount.containsKey(year) ? yearToMovieCount.get(year) : 0));
-                actorToMoviePerYearCount.put(actor, yearToMovieCount);
-            }
-        long maximumMovieCount = 0;
-        Actor mostProductiveActor = null;
-        long mostProductiveYear = 0;
-        for (final Actor actor : actorToMoviePerYearCount.keySet())
-            for (final long year : actorToMoviePerYearCount.get(actor).keySet()) {
-                if (actorToMoviePerYearCount.get(actor).get(year) > maximumMovieCount) {
-                    maximumMovieCount = actorToMoviePerYearCount.get(actor).get(year);
-                    mostProductiveActor = actor;
-                    mostProductiveYear = year;
+            for (final Actor actor : movie.getActors())
+                actorYearCounter.add(actor, movie.getReleaseYear());
+        return formatMostActiveActorInSingleYear(actorYearCounter.getMostActive());
+    }
+
+    /**
+     * Java 8 style: a single parallel pass over the movies with a mergeable collector. Combining the partial counters
+     * from left to right keeps the actors in order of first appearance, so ties are resolved in the same way as in the
+     * Java 7 loop.
+     *
+     * @param movies the movies.
+     * @return the actor with the most movies in a single year.
+     */
+    String mostActiveActorInSingleYearJava8(final List<Movie> movies) {
+        return formatMostActiveActorInSingleYear(
+            movies.parallelStream()
+                .collect(Collector.of(ActorYearCounter<Actor>::new,
+                                      (counter, movie) -> movie.getActors()
+                                          .forEach(actor -> counter.add(actor, movie.getReleaseYear())),
+                                      (counter1, counter2) -> {
+                                          counter1.combine(counter2);
+                                          return counter1;
+                                      }))
+                .getMostActive());
+    }
+
+    private String formatMostActiveActorInSingleYear(final List<ActorYearCounter.ActorYear<Actor>> mostActive) {
+        if (!mostActive.isEmpty())
+            return "most productive actor in a single year: " + mostActive.get(0).getActor().getFullName()
+                   + ", who worked on " + mostActive.get(0).getMovieCount() + " movies in "
+                   + mostActive.get(0).getYear() + ".";
+        else
+            return "most productive actor in a single year not found?!?";
+    }
+
+    /**
+     * Columnar store version: visit the movies year by year and count per actor id, resetting only the touched
+     * counters. The store numbers the actors in order of first appearance, so ties are resolved in the same way as in
+     * the Java 7 loop: the lowest actor id wins, and for the same actor the earliest year (which is visited first).
+     *
+     * @param store the movie store.
+     * @return the actor with the most movies in a single year.
+     */
+    String mostActiveActorInSingleYearColumnar(final MovieStore store) {
+        final int[] yearRange = getYearRange(store);
+        final int[] yearOffsets = new int[yearRange[1] - yearRange[0] + 2];
+        for (int movieId = 0; movieId < store.getMovieCount(); movieId++)
+            yearOffsets[store.getReleaseYear(movieId) - yearRange[0] + 1]++;
+        for (int yearIndex = 1; yearIndex < yearOffsets.length; yearIndex++)
+            yearOffsets[yearIndex] += yearOffsets[yearIndex - 1];
+        final int[] moviesByYear = new int[store.getMovieCount()];
+        final int[] nextPositions = Arrays.copyOf(yearOffsets, yearOffsets.length - 1);
+        for (int movieId = 0; movieId < store.getMovieCount(); movieId++)
+            moviesByYear[nextPositions[store.getReleaseYear(movieId) - yearRange[0]]++] = movieId;
+        final int[] actorMovieCounts = new int[store.getActorCount()];
+        int maximumYearCount = 0;
+        int mostProductiveActorId = -1;
+        int mostProductiveYearIndex = 0;
+        for (int yearIndex = 0; yearIndex < yearOffsets.length - 1; yearIndex++) {
+            for (int position = yearOffsets[yearIndex]; position < yearOffsets[yearIndex + 1]; position++) {
+                final int movieId = moviesByYear[position];
+                for (int castPosition = store.getCastStart(movieId); castPosition < store.getCastEnd(movieId);
+                     castPosition++) {
+                    final int actorId = store.getCastActorId(castPosition);
+                    final int actorMovieCount = ++actorMovieCounts[actorId];
+                    if (actorMovieCount > maximumYearCount
+                        || actorMovieCount == maximumYearCount && actorId < mostProductiveActorId) {
+                        maximumYearCount = actorMovieCount;
+                        mostProductiveActorId = actorId;
+                        mostProductiveYearIndex = yearIndex;
+                    }
                 }
             }
-        System.out.println();
-        if (mostProductiveActor != null)
-            System.out.println("Java 7 - most productive actor in a single year: " + mostProductiveActor.getFullName()
-                               + ", who worked on " + maximumMovieCount + " movies in " + mostProductiveYear + ".");
+            for (int position = yearOffsets[yearIndex]; position < yearOffsets[yearIndex + 1]; position++) {
+                final int movieId = moviesByYear[position];
+                for (int castPosition = store.getCastStart(movieId); castPosition < store.getCastEnd(movieId);
+                     castPosition++)
+                    actorMovieCounts[store.getCastActorId(castPosition)] = 0;
+            }
+        }
+        if (mostProductiveActorId != -1)
+            return "most productive actor in a single year: " + store.getActor(mostProductiveActorId).getFullName()
+                   + ", who worked on " + maximumYearCount + " movies in " + (yearRange[0] + mostProductiveYearIndex)
+                   + ".";
         else
-            System.out.println("Java 7 - most productive actor in a single year not found?!?");
-
-        // Java 8 style.
-        // todo: rewrite to improve performance, for example by having the movies as the "outer loop".
-        // Disabled the code below for the moment.
-        System.out.println("Java 8 - most productive actor in a single year: to be optimized...");
-        if (movies.size() == -1) {
-            final Map.Entry<Actor, Map.Entry<Integer, Long>> actorYearCountEntry = actors.stream().parallel()
-                .collect(Collectors.toMap(
-                    Function.identity(),
-                    actor -> movies.stream().filter(movie -> movie.getActors().contains(actor))
-                        .collect(Collectors.groupingBy(Movie::getReleaseYear, Collectors.counting()))
-                        .entrySet().stream().max(Map.Entry.comparingByValue()).get()))
-                .entrySet().stream().max(Comparator.comparing(entry -> entry.getValue().getValue())).get();
-            System.out.println("Most productive actor in a single year: " + actorYearCountEntry.getKey().getFullName());
-            System.out.println("Year: " + actorYearCountEntry.getValue().getKey());
-            System.out.println("Movie count: " + actorYearCountEntry.getValue().getValue());
-            System.out.println();
+            return "most productive actor in a single year not found?!?";
+    }
+
+    /**
+     * Determine the first and last release year in a movie store.
+     *
+     * @param store the movie store.
+     * @return an array with the minimum and maximum year.
+     */
+    private int[] getYearRange(final MovieStore store) {
+        int minimumYear = Integer.MAX_VALUE;
+        int maximumYear = Integer.MIN_VALUE;
+        for (int movieId = 0; movieId < store.getMovieCount(); movieId++) {
+            minimumYear = Math.min(minimumYear, store.getReleaseYear(movieId));
+            maximumYear = Math.max(maximumYear, store.getReleaseYear(movieId));
         }
+        return new int[]{minimumYear, maximumYear};
+    }
+
+    private int indexOfMaximum(final int[] counts) {
+        int maximumIndex = 0;
+        for (int index = 1; index < counts.length; index++)
+            if (counts[index] > counts[maximumIndex])
+                maximumIndex = index;
+        return maximumIndex;
+    }
+
+    /**
+     * Print a few actor lookups that are answered by the inverted actor index instead of scanning all movies.
+     *
+     * @param index the actor index, which is only built when the result is not cached.
+     */
+    private void printActorLookups(final Supplier<ActorIndex> index) {
+        System.out.println();
+        System.out.println("Index - " + cached("actorLookups.index", () -> actorLookupsIndex(index.get())));
+    }
+
+    String actorLookupsIndex(final ActorIndex index) {
+        final String clint = "Eastwood, Clint";
+        final String morgan = "Freeman, Morgan";
+        final MovieStore store = index.getStore();
+        final List<String> titles = new ArrayList<>();
+        for (final int movieId : index.getMoviesWithBoth(clint, morgan))
+            titles.add(store.getTitle(movieId));
+        return "Clint Eastwood acted in " + index.getMovies(clint).length + " movies ("
+               + index.countInYears(clint, 1990, 1999) + " in the nineties), with Morgan Freeman in: " + titles + ".";
     }
 
     /**
-     * Read the movies list from the input file.
+     * Print a few ad-hoc range and group-by queries that are answered by the pre-aggregated year by actor cube.
+     *
+     * @param cube the year by actor cube, which is only built when a result is not cached.
+     */
+    private void printCubeQueries(final Supplier<YearActorCube> cube) {
+        System.out.println();
+        System.out.println("Cube - " + cached("mostActiveActor.cube", () -> mostActiveActorCube(cube.get())));
+        System.out.println("Cube - " + cached("rangeQueries.cube", () -> rangeQueriesCube(cube.get())));
+    }
+
+    String mostActiveActorCube(final YearActorCube cube) {
+        final List<YearActorCube.ActorCount> mostActive = cube.getMostActiveActors(cube.getFirstYear(),
+                                                                                   cube.getLastYear(), 1);
+        if (!mostActive.isEmpty())
+            return "most productive actor: " + cube.getStore().getActor(mostActive.get(0).getActorId()).getFullName()
+                   + ", who worked on " + mostActive.get(0).getMovieCount() + " movies.";
+        else
+            return "most productive actor not found?!?";
+    }
+
+    String rangeQueriesCube(final YearActorCube cube) {
+        final MovieStore store = cube.getStore();
+        final int[] actorIds = {store.getActorId("Eastwood, Clint"), store.getActorId("Freeman, Morgan")};
+        final int busiestDecade = cube.getBusiestPeriod(10);
+        return "most productive actors between 1990 and 1999: " + cube.getMostActiveActors(1990, 1999, 3)
+               + "; busiest decade: " + busiestDecade + "-" + (busiestDecade + 9) + ", with "
+               + cube.countMovies(busiestDecade, busiestDecade + 9) + " movies; movies of Clint Eastwood and Morgan "
+               + "Freeman per year from 1990 to 1999: "
+               + (actorIds[0] != -1 && actorIds[1] != -1
+                  ? Arrays.toString(cube.countMoviesPerYear(actorIds, 1990, 1999)) : "[]")
+               + ".";
+    }
+
+    /**
+     * Read the movies list from the input file. The file is memory-mapped and split into byte ranges, which a parallel
+     * stream parses on its fork-join workers.
      *
      * @param filePath the input file path.
      * @return the movies.
      */
-    private List<Movie> readMoviesAndActors(final String filePath) {
-        System.out.println("Reading movies and actors from file " + filePath + "...");
-        final List<Movie> movies = new ArrayList<>();
+    private List<Movie> readMovies(final String filePath) {
+        System.out.println("Reading movies from file " + filePath + "...");
+        List<Movie> movies = new ArrayList<>();
+        try (final Stream<Movie> movieStream = MappedMovieSpliterator.stream(Paths.get(filePath),
+                                                                             EnumSet.allOf(MovieField.class), true)) {
+            movies = movieStream.collect(Collectors.toList());
+        } catch (final IOException e) {
+            e.printStackTrace();
+        } catch (final UncheckedIOException e) {
+            e.getCause().printStackTrace();
+        }
+        return movies;
+    }
+
+    /**
+     * Read the movies from the input file into a columnar store. The store is loaded from the binary snapshot next to
+     * the input file when that snapshot is still valid; otherwise the input file is parsed and the snapshot is written.
+     *
+     * @param filePath the input file path.
+     * @return the movie store.
+     */
+    private MovieStore readMovieStore(final String filePath) {
+        System.out.println("Reading movie store from file " + filePath + "...");
+        MovieStore store = new MovieStore.Builder().build();
         try {
-            final BufferedReader dataReader = new BufferedReader(new FileReader(filePath));
-            String line;
-            while ((line = dataReader.readLine()) != null)
-                movies.add(new Movie(line));
-            dataReader.close();
+            store = MovieSnapshot.loadOrCreate(Paths.get(filePath));
         } catch (final IOException e) {
             e.printStackTrace();
         }
-        System.out.println("Total number of movies: " + movies.size() + ".");
+        System.out.println("Movie store: " + store.getMovieCount() + " movies and " + store.getActorCount()
+                           + " actors.");
 
-        return movies;
+        return store;
+    }
+
+    /**
+     * The queries that are answered by one shared scan over the movies: the distinct actors (exact and approximate)
+     * and the year and actor queries of the print methods.
+     */
+    private static class EngineQueries {
+        private final MovieQueryEngine engine = new MovieQueryEngine();
+        private final MovieQueryEngine.Result<Set<Actor>> actors = engine.register(
+            MovieQuery.castEntries().collect(Collectors.mapping(MovieQuery.CastEntry::getActor, Collectors.toSet())));
+        private final MovieQueryEngine.Result<HyperLogLog> actorSketch = engine.register(
+            MovieQuery.castEntries().collect(Collector.of(HyperLogLog::new,
+                                                          (sketch, entry) -> sketch.add(entry.getActor().getFullName()),
+                                                          (sketch1, sketch2) -> {
+                                                              sketch1.combine(sketch2);
+                                                              return sketch1;
+                                                          })));
+        private final MovieQueryEngine.Result<List<Map.Entry<Integer, Long>>> yearWithMostMovies = engine.register(
+            MovieQuery.movies().groupBy(Movie::getReleaseYear).topK(1));
+        private final MovieQueryEngine.Result<List<Map.Entry<Actor, Long>>> mostActiveActor = engine.register(
+            MovieQuery.castEntries().groupBy(MovieQuery.CastEntry::getActor).topK(1));
+        private final MovieQueryEngine.Result<List<Map.Entry<Map.Entry<Actor, Integer>, Long>>>
+            mostActiveActorInSingleYear = engine.register(
+            MovieQuery.castEntries().groupBy(MovieQuery.CastEntry::getActor, MovieQuery.CastEntry::getReleaseYear)
+                .topK(1));
+
+        private String formatYearWithMostMovies() {
+            final Map.Entry<Integer, Long> yearAndCount = yearWithMostMovies.get().get(0);
+            return "maximum movie year: " + yearAndCount.getKey() + ", when " + yearAndCount.getValue()
+                   + " movies were released.";
+        }
+
+        private String formatMostActiveActor() {
+            final Map.Entry<Actor, Long> actorAndCount = mostActiveActor.get().get(0);
+            return "most productive actor: " + actorAndCount.getKey().getFullName() + ", who worked on "
+                   + actorAndCount.getValue() + " movies.";
+        }
+
+        private String formatMostActiveActorInSingleYear() {
+            final Map.Entry<Map.Entry<Actor, Integer>, Long> actorYearAndCount = mostActiveActorInSingleYear.get()
+                .get(0);
+            return "most productive actor in a single year: " + actorYearAndCount.getKey().getKey().getFullName()
+                   + ", who worked on " + actorYearAndCount.getValue() + " movies in "
+                   + actorYearAndCount.getKey().getValue() + ".";
+        }
     }
 }
@@ -0,0 +1,183 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spliterator that parses the movies of a memory-mapped movies file. The file is split into byte ranges that start at
+ * the beginning of a line (see MovieLineTokenizer.splitIntoRanges), and trySplit hands out half of the ranges that have
+ * not been started yet, so a parallel stream parses the ranges on its fork-join workers. Every spliterator maps a
+ * window of its current range at a time (so files larger than 2 GB are supported), copies the bytes in blocks, and
+ * tokenizes a whole block at once. The movies of a spliterator share the Actor objects of the same actor.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class MappedMovieSpliterator implements Spliterator<Movie> {
+    private static final long MINIMUM_RANGE_SIZE = 1 << 20;
+    private static final int WINDOW_SIZE = 1 << 26;
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final long[] rangeStarts;
+    private final Set<MovieField> fields;
+    private final int toRange;
+    private int nextRange;
+    private long position;
+    private long rangeEnd;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private MovieLineTokenizer tokenizer;
+    private byte[] block;
+    private int blockLength;
+    private final Deque<Movie> movies = new ArrayDeque<>();
+    private final Map<String, Actor> actors = new HashMap<>();
+
+    private MappedMovieSpliterator(final FileChannel channel, final long[] rangeStarts, final Set<MovieField> fields,
+                                   final int fromRange, final int toRange) {
+        this.channel = channel;
+        this.rangeStarts = rangeStarts;
+        this.fields = fields;
+        this.nextRange = fromRange;
+        this.toRange = toRange;
+    }
+
+    /**
+     * Create a stream with the movies of a file. The stream should be closed to release the file.
+     *
+     * @param filePath the input file path.
+     * @param fields   the fields to parse (see Movie(String, Set)).
+     * @param parallel whether the stream should be parallel.
+     * @return the stream of movies.
+     * @throws IOException if the file cannot be opened.
+     */
+    public static Stream<Movie> stream(final Path filePath, final Set<MovieField> fields, final boolean parallel)
+        throws IOException {
+        final FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
+        final long[] rangeStarts;
+        try {
+            rangeStarts = MovieLineTokenizer.splitIntoRanges(channel, MINIMUM_RANGE_SIZE);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+        final MappedMovieSpliterator spliterator = new MappedMovieSpliterator(channel, rangeStarts, fields, 0,
+                                                                              rangeStarts.length - 1);
+        return StreamSupport.stream(spliterator, parallel).onClose(() -> {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super Movie> action) {
+        while (movies.isEmpty())
+            if (!readBlock())
+                return false;
+        action.accept(movies.poll());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super Movie> action) {
+        do {
+            while (!movies.isEmpty())
+                action.accept(movies.poll());
+        } while (readBlock());
+    }
+
+    /**
+     * Split off the first half of the ranges that have not been started yet.
+     *
+     * @return a spliterator for those ranges, or null when fewer than two ranges are left.
+     */
+    @Override
+    public Spliterator<Movie> trySplit() {
+        final int remainingRanges = toRange - nextRange;
+        if (remainingRanges < 2 || position < rangeEnd || !movies.isEmpty())
+            return null;
+        final int splitRange = nextRange + remainingRanges / 2;
+        final MappedMovieSpliterator prefix = new MappedMovieSpliterator(channel, rangeStarts, fields, nextRange,
+                                                                         splitRange);
+        nextRange = splitRange;
+        return prefix;
+    }
+
+    /**
+     * Estimate the remaining size in bytes: the number of movies is unknown until the ranges have been tokenized.
+     *
+     * @return the number of bytes that have not been read yet.
+     */
+    @Override
+    public long estimateSize() {
+        return rangeEnd - position + rangeStarts[toRange] - rangeStarts[nextRange];
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * Copy the next block of the current range (or the next range) from the mapped window after the incomplete line
+     * of the previous block, and parse the complete lines into movies.
+     *
+     * @return whether a block was read; false at the end of the ranges.
+     * @throws UncheckedIOException if the file cannot be mapped.
+     */
+    private boolean readBlock() {
+        if (position == rangeEnd) {
+            if (nextRange == toRange)
+                return false;
+            position = rangeStarts[nextRange];
+            rangeEnd = rangeStarts[++nextRange];
+            window = null;
+        }
+        if (tokenizer == null) {
+            tokenizer = new MovieLineTokenizer();
+            tokenizer.setActorsTokenized(fields.contains(MovieField.ACTORS));
+            block = new byte[BLOCK_SIZE];
+        }
+        if (window == null || position == windowStart + window.limit())
+            mapWindow();
+        if (blockLength == block.length)
+            block = Arrays.copyOf(block, 2 * block.length);
+        final int byteCount = (int) Math.min(block.length - blockLength, windowStart + window.limit() - position);
+        window.position((int) (position - windowStart));
+        window.get(block, blockLength, byteCount);
+        position += byteCount;
+        blockLength += byteCount;
+        final int linesEnd = tokenizer.tokenize(block, 0, blockLength, position == rangeEnd);
+        for (int line = 0; line < tokenizer.getLineCount(); line++)
+            if (!tokenizer.isEmpty(line))
+                movies.add(Movie.of(tokenizer, line, fields, actors));
+        System.arraycopy(block, linesEnd, block, 0, blockLength - linesEnd);
+        blockLength -= linesEnd;
+        return true;
+    }
+
+    private void mapWindow() {
+        try {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, rangeEnd - position));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
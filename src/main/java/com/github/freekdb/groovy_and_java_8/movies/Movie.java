@@ -1,17 +1,29 @@
 package com.github.freekdb.groovy_and_java_8.movies;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Class representing movies.
+ * Class representing movies. A movie that is parsed from a data line keeps the line and only decodes its actors when
+ * they are first requested, so loading movies for queries on titles or years does not create the actor objects. The
+ * line is released once the actors have been decoded.
  *
  * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
  */
 public class Movie {
+    /**
+     * Tokenizer per thread: its line arrays are reused for every movie that the thread parses.
+     */
+    private static final ThreadLocal<MovieLineTokenizer> TOKENIZERS = ThreadLocal.withInitial(MovieLineTokenizer::new);
+
     private final String title;
     private final int releaseYear;
-    private final List<Actor> actors;
+    private String dataLine;
+    private volatile List<Actor> actors;
 
 //    public Movie(final String title, final int releaseYear) {
 //        this.title = title;
@@ -19,19 +31,56 @@ public class Movie {
 //        this.actors = new ArrayList<>();
 //    }
 
+    public Movie(final String title, final int releaseYear, final List<Actor> actors) {
+        this.title = title;
+        this.releaseYear = releaseYear;
+        this.dataLine = null;
+        this.actors = actors;
+    }
+
     public Movie(final String dataLine) {
-        final int startIndexYear = dataLine.indexOf('(') + 1;
-        final int endIndexYear = Math.min(dataLine.indexOf(')', startIndexYear), startIndexYear + 4);
-        final int startIndexActors = dataLine.indexOf('/');
-        this.title = dataLine.substring(0, startIndexYear - 1).trim();
-        this.releaseYear = Integer.parseInt(dataLine.substring(startIndexYear, endIndexYear));
-        this.actors = new ArrayList<>();
-        for (final String actorName : dataLine.substring(startIndexActors + 1).split("/")) {
-            final int commaIndex = actorName.indexOf(',');
-            final String firstName = (commaIndex != -1) ? actorName.substring(commaIndex + 1).trim() : actorName;
-            final String lastName = (commaIndex != -1) ? actorName.substring(0, commaIndex).trim() : "";
-            this.actors.add(new Actor(firstName, lastName));
-        }
+        this(dataLine, EnumSet.allOf(MovieField.class));
+    }
+
+    /**
+     * Parse a movie from a data line, with only the requested fields: the title is null and the release year is zero
+     * when they are not requested, and the actor list is empty when the actors are not requested (the appendix is not
+     * kept). The actors are decoded lazily.
+     *
+     * @param dataLine the data line.
+     * @param fields   the fields to parse.
+     */
+    public Movie(final String dataLine, final Set<MovieField> fields) {
+        final MovieLineTokenizer tokenizer = tokenize(dataLine, false);
+        this.title = fields.contains(MovieField.TITLE) ? tokenizer.getTitle(0) : null;
+        this.releaseYear = fields.contains(MovieField.YEAR) ? tokenizer.getReleaseYear(0) : 0;
+        this.dataLine = fields.contains(MovieField.ACTORS) ? dataLine : null;
+        this.actors = this.dataLine != null ? null : Collections.emptyList();
+    }
+
+    /**
+     * Create a movie from a line of a tokenized block, with only the requested fields (like Movie(String, Set)). The
+     * actors are decoded right away, since the tokenizer and its block are reused for the next lines; an actor that is
+     * already in the actor map is shared instead of decoded again.
+     *
+     * @param tokenizer the tokenizer with the current block (with the actors tokenized when they are requested).
+     * @param line      the line index in the current block.
+     * @param fields    the fields to parse.
+     * @param actorMap  the actors that were decoded before, by their names in the data lines.
+     * @return the movie.
+     */
+    static Movie of(final MovieLineTokenizer tokenizer, final int line, final Set<MovieField> fields,
+                    final Map<String, Actor> actorMap) {
+        final String title = fields.contains(MovieField.TITLE) ? tokenizer.getTitle(line) : null;
+        final int releaseYear = fields.contains(MovieField.YEAR) ? tokenizer.getReleaseYear(line) : 0;
+        if (!fields.contains(MovieField.ACTORS))
+            return new Movie(title, releaseYear, Collections.emptyList());
+        final List<String> actorNames = new ArrayList<>();
+        tokenizer.getActors(line, false, actorNames);
+        final List<Actor> actors = new ArrayList<>(actorNames.size());
+        for (final String actorName : actorNames)
+            actors.add(actorMap.computeIfAbsent(actorName, name -> decodeActor(name, 0, name.length())));
+        return new Movie(title, releaseYear, actors);
     }
 
 //    public String getTitle() {
@@ -42,10 +91,59 @@ public class Movie {
         return releaseYear;
     }
 
+    /**
+     * Get the actors, which are decoded from the data line on the first call; the data line is not needed after that.
+     * Concurrent first calls wait for the one that decodes the line.
+     *
+     * @return the actors.
+     */
     public List<Actor> getActors() {
+        List<Actor> actors = this.actors;
+        if (actors == null)
+            synchronized (this) {
+                actors = this.actors;
+                if (actors == null) {
+                    actors = decodeActors(dataLine);
+                    this.actors = actors;
+                    dataLine = null;
+                }
+            }
         return actors;
     }
 
+    /**
+     * Decode the actors of a data line. The first and last names are taken from the line directly, without creating a
+     * string for the whole name first.
+     */
+    private static List<Actor> decodeActors(final String dataLine) {
+        final MovieLineTokenizer tokenizer = tokenize(dataLine, true);
+        final int actorCount = tokenizer.findActors(0, false);
+        final List<Actor> actors = new ArrayList<>(actorCount);
+        for (int actor = 0; actor < actorCount; actor++)
+            actors.add(decodeActor(dataLine, tokenizer.getActorStart(actor), tokenizer.getActorEnd(actor)));
+        return actors;
+    }
+
+    /**
+     * Decode an actor name ("Last, First", or a single name) from part of a text.
+     */
+    private static Actor decodeActor(final String text, final int start, final int end) {
+        int commaIndex = start;
+        while (commaIndex < end && text.charAt(commaIndex) != ',')
+            commaIndex++;
+        final String firstName = (commaIndex != end) ? text.substring(commaIndex + 1, end).trim()
+                                                     : text.substring(start, end);
+        final String lastName = (commaIndex != end) ? text.substring(start, commaIndex).trim() : "";
+        return new Actor(firstName, lastName);
+    }
+
+    private static MovieLineTokenizer tokenize(final String dataLine, final boolean actorsTokenized) {
+        final MovieLineTokenizer tokenizer = TOKENIZERS.get();
+        tokenizer.setActorsTokenized(actorsTokenized);
+        tokenizer.tokenize(dataLine);
+        return tokenizer;
+    }
+
     @Override
     public String toString() {
         return title + " (" + releaseYear + ")";
@@ -0,0 +1,271 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Generator for synthetic movie files in the movies-mpaa format ("Title (Year)/Last, First/Last, First/..."). The
+ * output is deterministic for a given seed and is streamed to disk, so files of many gigabytes can be generated
+ * without holding them in memory.
+ * <p>
+ * Actor popularity follows a Zipf distribution with a configurable skew, and the cast size of each movie is drawn from
+ * a configurable distribution. The data includes the tricky cases of the real file: non-ASCII names (Françoise,
+ * Fröbe), "(2001/I)"-style years, single-name actors, and suffixes like "Jr." and "(II)".
+ * <p>
+ * Usage: MovieDataGenerator [--output file] [--movies count] [--actors count] [--seed seed] [--zipf skew]
+ * [--cast minimum,mean,maximum] [--cast-distribution fixed|uniform|geometric]
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class MovieDataGenerator {
+    /**
+     * Distributions for the number of actors in a movie.
+     */
+    public enum CastSizeDistribution {
+        FIXED, UNIFORM, GEOMETRIC
+    }
+
+    private static final String[] NAME_SYLLABLES = {
+        "al", "ba", "ber", "bro", "ca", "car", "da", "del", "dro", "el", "fa", "fer", "frö", "ga", "gon", "ha", "hen",
+        "ja", "jo", "ka", "kel", "la", "ler", "lo", "ma", "mar", "mo", "na", "nel", "no", "pa", "per", "ra", "ren",
+        "ro", "sa", "sen", "son", "ta", "ter", "ti", "va", "ver", "wa", "wes", "zé"
+    };
+    private static final String[] FIRST_NAMES = {
+        "Adam", "Alice", "Ana", "Arthur", "Bob", "Brigitte", "Carlos", "Chloé", "Claire", "Daniel", "David", "Dolores",
+        "Elena", "Emma", "Eric", "Françoise", "Frank", "Gert", "Goldie", "Hans", "Helga", "Ian", "Inès", "Jack", "Jane",
+        "Jean-Luc", "John", "José", "Julia", "Karl", "Kiff", "Laura", "Lena", "Luis", "Mark", "Mary Ellen", "Mena",
+        "Michael", "Nora", "Olaf", "Paul", "Phil", "Renée", "Robert", "Rosine 'Ace'", "Sara", "Seann William", "Søren",
+        "Thomas", "Tove", "Walt", "Zoë"
+    };
+    private static final String[] SUFFIXES = {" Jr.", " Sr.", " III"};
+    private static final String[] TITLE_WORDS = {
+        "Amour", "Angel", "Black", "Blue", "Bride", "City", "Dark", "Dawn", "Dead", "Dream", "Eagle", "Fire", "Garden",
+        "Ghost", "Gold", "Heart", "Hero", "House", "Island", "King", "Lady", "Last", "Light", "Love", "Man", "Moon",
+        "Night", "Ocean", "Queen", "Red", "River", "Road", "Secret", "Shadow", "Silver", "Sky", "Star", "Storm",
+        "Summer", "Sun", "Time", "Über", "War", "Water", "White", "Wild", "Wind", "Winter", "World", "Zoë's"
+    };
+    private static final String[] ROMAN_NUMERALS = {"I", "II", "III", "IV", "V", "VI", "VII", "VIII", "IX", "X"};
+
+    private final long seed;
+    private final long movieCount;
+    private final int actorCount;
+    private final int castSizeMinimum;
+    private final int castSizeMean;
+    private final int castSizeMaximum;
+    private final CastSizeDistribution castSizeDistribution;
+    private final double[] actorCumulativeWeights;
+
+    public MovieDataGenerator(final long seed, final long movieCount, final int actorCount, final double zipfSkew,
+                              final int castSizeMinimum, final int castSizeMean, final int castSizeMaximum,
+                              final CastSizeDistribution castSizeDistribution) {
+        if (actorCount < castSizeMaximum || castSizeMinimum < 1 || castSizeMinimum > castSizeMean
+            || castSizeMean > castSizeMaximum)
+            throw new IllegalArgumentException("Cast sizes should be 1 <= minimum <= mean <= maximum <= actor count.");
+        this.seed = seed;
+        this.movieCount = movieCount;
+        this.actorCount = actorCount;
+        this.castSizeMinimum = castSizeMinimum;
+        this.castSizeMean = castSizeMean;
+        this.castSizeMaximum = castSizeMaximum;
+        this.castSizeDistribution = castSizeDistribution;
+        this.actorCumulativeWeights = createCumulativeZipfWeights(actorCount, zipfSkew);
+    }
+
+    /**
+     * Main method.
+     *
+     * @param arguments command-line options, see the class documentation.
+     * @throws IOException if the output file cannot be written.
+     */
+    public static void main(final String[] arguments) throws IOException {
+        Path outputPath = Paths.get("data/movies-generated.txt");
+        long seed = 1234567890L;
+        long movieCount = 14_000;
+        int actorCount = 170_000;
+        double zipfSkew = 0.3;
+        int[] castSizes = {1, 30, 200};
+        CastSizeDistribution castSizeDistribution = CastSizeDistribution.GEOMETRIC;
+        for (int argumentIndex = 0; argumentIndex + 1 < arguments.length; argumentIndex += 2) {
+            final String value = arguments[argumentIndex + 1];
+            switch (arguments[argumentIndex]) {
+                case "--output":
+                    outputPath = Paths.get(value);
+                    break;
+                case "--movies":
+                    movieCount = Long.parseLong(value);
+                    break;
+                case "--actors":
+                    actorCount = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--zipf":
+                    zipfSkew = Double.parseDouble(value);
+                    break;
+                case "--cast":
+                    castSizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--cast-distribution":
+                    castSizeDistribution = CastSizeDistribution.valueOf(value.toUpperCase());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arguments[argumentIndex]);
+            }
+        }
+
+        final long start = System.currentTimeMillis();
+        new MovieDataGenerator(seed, movieCount, actorCount, zipfSkew, castSizes[0], castSizes[1], castSizes[2],
+                               castSizeDistribution).generate(outputPath);
+        System.out.println("Generated " + movieCount + " movies in " + outputPath + " ("
+                           + Files.size(outputPath) / (1024 * 1024) + " MB) in "
+                           + (System.currentTimeMillis() - start) / 1000.0 + " seconds.");
+    }
+
+    /**
+     * Write the movies to a file.
+     *
+     * @param outputPath the output file path.
+     * @throws IOException if the file cannot be written.
+     */
+    public void generate(final Path outputPath) throws IOException {
+        try (final Writer writer = new BufferedWriter(
+            new OutputStreamWriter(Files.newOutputStream(outputPath), StandardCharsets.UTF_8), 1 << 20)) {
+            generate(writer);
+        }
+    }
+
+    /**
+     * Write the movies to a writer, one line per movie.
+     *
+     * @param writer the writer.
+     * @throws IOException if writing fails.
+     */
+    public void generate(final Writer writer) throws IOException {
+        final Random random = new Random(seed);
+        final StringBuilder line = new StringBuilder(4096);
+        final TreeSet<String> cast = new TreeSet<>();
+        for (long movieIndex = 0; movieIndex < movieCount; movieIndex++) {
+            line.setLength(0);
+            appendTitle(line, random);
+            line.append(" (").append(drawYear(random));
+            if (random.nextInt(100) == 0)
+                line.append('/').append(ROMAN_NUMERALS[random.nextInt(3)]);
+            line.append(')');
+            final int castSize = drawCastSize(random);
+            cast.clear();
+            while (cast.size() < castSize)
+                cast.add(getActorName(drawActorId(random)));
+            for (final String actorName : cast)
+                line.append('/').append(actorName);
+            writer.append(line).append('\n');
+        }
+    }
+
+    /**
+     * Get the name of an actor; the same id always gives the same name and different ids give different names.
+     *
+     * @param actorId the actor id.
+     * @return the actor name, usually formatted as "Last, First".
+     */
+    public static String getActorName(final int actorId) {
+        final int syllableCount = NAME_SYLLABLES.length;
+        final int lastNameCount = syllableCount * syllableCount * syllableCount;
+        final int nameCount = lastNameCount * FIRST_NAMES.length;
+        // Scramble the id (a bijection within each block of nameCount ids), so popular actors are not alphabetical.
+        final int nameId = (int) ((actorId % nameCount) * 2654435761L % nameCount) + actorId / nameCount * nameCount;
+        final int lastNameIndex = nameId % lastNameCount;
+        final String lastName = capitalize(NAME_SYLLABLES[lastNameIndex % syllableCount]
+                                           + NAME_SYLLABLES[(lastNameIndex / syllableCount) % syllableCount]
+                                           + NAME_SYLLABLES[lastNameIndex / (syllableCount * syllableCount)]);
+        final int variant = (nameId / lastNameCount) % FIRST_NAMES.length;
+        final String firstName = FIRST_NAMES[(variant + lastNameIndex) % FIRST_NAMES.length];
+        final StringBuilder name = new StringBuilder(lastName);
+        if (nameId % 97 == 13) {
+            // Single-name actor, numbered like IMDb does when the name is shared.
+            if (nameId >= lastNameCount)
+                name.append(" (").append(toRomanNumeral(nameId / lastNameCount + 1)).append(')');
+            return name.toString();
+        }
+        if (nameId % 89 == 7)
+            name.append(SUFFIXES[nameId % SUFFIXES.length]);
+        name.append(", ").append(firstName);
+        if (nameId >= nameCount)
+            name.append(" (").append(toRomanNumeral(nameId / nameCount + 1)).append(')');
+        return name.toString();
+    }
+
+    private void appendTitle(final StringBuilder line, final Random random) {
+        final int wordCount = 1 + random.nextInt(4);
+        for (int wordIndex = 0; wordIndex < wordCount; wordIndex++) {
+            if (wordIndex > 0)
+                line.append(' ');
+            line.append(TITLE_WORDS[random.nextInt(TITLE_WORDS.length)]);
+        }
+        final int variant = random.nextInt(20);
+        if (variant == 0)
+            line.append(", The");
+        else if (variant == 1)
+            line.append(' ').append(2 + random.nextInt(3));
+        else if (variant == 2)
+            line.append(": ").append(TITLE_WORDS[random.nextInt(TITLE_WORDS.length)]);
+    }
+
+    /**
+     * Draw a release year between 1915 and 2014, with more movies in recent years.
+     */
+    private int drawYear(final Random random) {
+        return 1915 + (int) (100 * Math.sqrt(random.nextDouble()));
+    }
+
+    private int drawCastSize(final Random random) {
+        switch (castSizeDistribution) {
+            case FIXED:
+                return castSizeMean;
+            case UNIFORM:
+                return Math.min(castSizeMaximum,
+                                castSizeMinimum + random.nextInt(2 * (castSizeMean - castSizeMinimum) + 1));
+            default:
+                final double successProbability = 1.0 / (castSizeMean - castSizeMinimum + 1);
+                final double failures = successProbability < 1.0
+                                        ? Math.floor(Math.log(1.0 - random.nextDouble())
+                                                     / Math.log(1.0 - successProbability))
+                                        : 0;
+                return (int) Math.min(castSizeMaximum, castSizeMinimum + failures);
+        }
+    }
+
+    private int drawActorId(final Random random) {
+        final int index = Arrays.binarySearch(actorCumulativeWeights, random.nextDouble());
+        return Math.min(actorCount - 1, index >= 0 ? index : -index - 1);
+    }
+
+    private static double[] createCumulativeZipfWeights(final int actorCount, final double zipfSkew) {
+        final double[] cumulativeWeights = new double[actorCount];
+        double totalWeight = 0;
+        for (int rank = 0; rank < actorCount; rank++) {
+            totalWeight += 1.0 / Math.pow(rank + 1, zipfSkew);
+            cumulativeWeights[rank] = totalWeight;
+        }
+        for (int rank = 0; rank < actorCount; rank++)
+            cumulativeWeights[rank] /= totalWeight;
+        return cumulativeWeights;
+    }
+
+    private static String capitalize(final String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String toRomanNumeral(final int number) {
+        return number <= ROMAN_NUMERALS.length ? ROMAN_NUMERALS[number - 1] : Integer.toString(number);
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+/**
+ * Fields of a movie line ("Title (Year)/Last, First/Last, First/..."). Readers that know which fields their consumers
+ * need only parse those, so for example year-only reports skip the titles and the actor lists.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public enum MovieField {
+    TITLE, YEAR, APPENDIX, ACTORS
+}
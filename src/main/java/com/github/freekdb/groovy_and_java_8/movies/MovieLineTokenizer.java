@@ -0,0 +1,548 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Tokenizer for movie lines ("Title (Year)/Last, First/Last, First/..."), which finds the delimiters of a whole block
+ * of lines in one pass and records their offsets per line. Titles, years, and actor names are only decoded when they
+ * are requested.
+ * <p>
+ * Blocks of UTF-8 bytes are scanned eight bytes at a time: each long word is compared with the four delimiter bytes
+ * ('\n', '(', ')', and '/') at once with SWAR (SIMD within a register) arithmetic, and only the matching bytes are
+ * visited; in a word with only slashes, the slashes are recorded without reading the bytes again. The last few bytes
+ * of a block (and every byte when SWAR is switched off) are scanned with a scalar loop. The scan also notes whether a
+ * block is pure ASCII, in which case the names are decoded without checking for multi-byte characters. Single lines
+ * that are already strings are scanned with String.indexOf, which the JIT compiler vectorizes.
+ * <p>
+ * When the actors are not needed (see setActorsTokenized), the slashes are not recorded, and after the year of a line
+ * has been found only the newlines are matched, so the rest of the line costs one comparison per eight bytes.
+ * <p>
+ * The fields are defined exactly like the indexOf/substring/split parsing that Movie and FileSource used: the title is
+ * the trimmed text before the first '(', the year is parsed from the text after that '(' up to the next ')' (at most
+ * four characters), and the actors are the text after the first '/' split on '/' (without trailing empty names).
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class MovieLineTokenizer {
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOWEST_BITS = 0x0101010101010101L;
+    private static final long CLOSING_PARENTHESES = 0x2929292929292929L;
+    private static final long SLASHES = 0x2F2F2F2F2F2F2F2FL;
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private final boolean swar;
+    private boolean actorsTokenized = true;
+    private byte[] bytes;
+    private ByteBuffer words;
+    private String text;
+    private byte[] block;
+    private ByteBuffer blockBuffer;
+
+    private int lineCount;
+    private int[] lineStarts;
+    private int[] lineEnds;
+    private int[] openingIndices;
+    private int[] closingIndices;
+    private int[] slashStarts;
+    private int[] slashes;
+    private int slashCount;
+    private long highBits;
+    private int[] actorStarts = new int[16];
+    private int[] actorEnds = new int[16];
+
+    private int lineStart;
+    private int openingIndex;
+    private int closingIndex;
+
+    public MovieLineTokenizer() {
+        this(true);
+    }
+
+    /**
+     * Create a tokenizer.
+     *
+     * @param swar whether blocks are scanned eight bytes at a time (true) or byte by byte (false).
+     */
+    public MovieLineTokenizer(final boolean swar) {
+        this.swar = swar;
+        allocateLines(16);
+        slashes = new int[64];
+    }
+
+    /**
+     * Set whether the next blocks or lines are tokenized with their actors. Without actors, the slashes are skipped,
+     * which makes tokenizing much cheaper for readers that only need the titles or years; findActors and getActors
+     * cannot be used then.
+     *
+     * @param actorsTokenized whether the actors can be retrieved.
+     */
+    public void setActorsTokenized(final boolean actorsTokenized) {
+        this.actorsTokenized = actorsTokenized;
+    }
+
+    /**
+     * Tokenize a single line; the results of the previous block or line are replaced.
+     *
+     * @param line the line (without line separator).
+     */
+    public void tokenize(final String line) {
+        startBlock(null, line, 0);
+        openingIndex = line.indexOf('(');
+        if (openingIndex != -1)
+            closingIndex = line.indexOf(')', openingIndex + 1);
+        if (actorsTokenized)
+            for (int slash = line.indexOf('/'); slash != -1; slash = line.indexOf('/', slash + 1))
+                addDelimiter('/', slash);
+        endLine(line.length(), line.length());
+    }
+
+    /**
+     * Tokenize the lines in a block of UTF-8 bytes; the results of the previous block or line are replaced. Only lines
+     * that end with a newline are tokenized, unless endOfInput is set: then the bytes after the last newline are the
+     * last line.
+     *
+     * @param bytes      the bytes.
+     * @param from       the start of the block (inclusive).
+     * @param to         the end of the block (exclusive).
+     * @param endOfInput whether the block ends the input.
+     * @return the index after the last tokenized line: the bytes from there to the end of the block are an incomplete
+     * line, which should be passed again with the next block.
+     */
+    public int tokenize(final byte[] bytes, final int from, final int to, final boolean endOfInput) {
+        startBlock(bytes, null, from);
+        int index = from;
+        if (swar)
+            index = actorsTokenized ? scanWords(bytes, from, to) : scanWordsWithoutActors(bytes, from, to);
+        for (; index < to; index++) {
+            final byte delimiter = bytes[index];
+            highBits |= delimiter;
+            if (delimiter == '\n' || delimiter == '(' || delimiter == ')' || (delimiter == '/' && actorsTokenized))
+                addDelimiter(delimiter, index);
+        }
+        if (endOfInput && lineStart < to)
+            endLine(to, to);
+        // Forget the delimiters of the incomplete line.
+        slashCount = slashStarts[lineCount];
+        return lineStart;
+    }
+
+    /**
+     * Read a byte range of a file in blocks and tokenize every block; after every block, the consumer is called with
+     * this tokenizer. An incomplete line at the end of a block is carried over to the next block. The block buffer is
+     * reused by later calls.
+     *
+     * @param channel       the file channel.
+     * @param start         the start of the byte range (inclusive).
+     * @param end           the end of the byte range (exclusive).
+     * @param endOfInput    whether a last line without a newline should be tokenized as well.
+     * @param blockConsumer the consumer of the tokenized blocks.
+     * @return the position after the last tokenized line.
+     * @throws IOException if the file cannot be read.
+     */
+    public long tokenize(final FileChannel channel, final long start, final long end, final boolean endOfInput,
+                         final Consumer<MovieLineTokenizer> blockConsumer) throws IOException {
+        if (block == null)
+            setBlock(new byte[BLOCK_SIZE]);
+        int blockLength = 0;
+        long position = start;
+        long consumedPosition = start;
+        while (position < end) {
+            if (blockLength == block.length)
+                setBlock(Arrays.copyOf(block, 2 * block.length));
+            blockBuffer.limit((int) Math.min(block.length, blockLength + end - position)).position(blockLength);
+            final int byteCount = channel.read(blockBuffer, position);
+            if (byteCount <= 0)
+                break;
+            position += byteCount;
+            blockLength += byteCount;
+            final int linesEnd = tokenize(block, 0, blockLength, endOfInput && position == end);
+            blockConsumer.accept(this);
+            consumedPosition += linesEnd;
+            System.arraycopy(block, linesEnd, block, 0, blockLength - linesEnd);
+            blockLength -= linesEnd;
+        }
+        return consumedPosition;
+    }
+
+    /**
+     * Split a file into byte ranges that start at the beginning of a line, a few per worker thread, so the ranges can
+     * be tokenized in parallel.
+     *
+     * @param channel          the file channel.
+     * @param minimumRangeSize the minimum size of a range in bytes.
+     * @return the start positions of the ranges, followed by the file size.
+     * @throws IOException if the file cannot be read.
+     */
+    public static long[] splitIntoRanges(final FileChannel channel, final long minimumRangeSize) throws IOException {
+        final long size = channel.size();
+        final int rangeCount = (int) Math.max(1, Math.min(4L * Runtime.getRuntime().availableProcessors(),
+                                                          size / minimumRangeSize));
+        final long[] rangeStarts = new long[rangeCount + 1];
+        final ByteBuffer scanBuffer = ByteBuffer.allocate(1 << 13);
+        for (int range = 1; range < rangeCount; range++)
+            rangeStarts[range] = findLineStart(channel, Math.max(rangeStarts[range - 1], range * (size / rangeCount)),
+                                               size, scanBuffer);
+        rangeStarts[rangeCount] = size;
+        return rangeStarts;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Check whether a line is empty (after removing a carriage return); empty lines have no movie.
+     *
+     * @param line the line index in the current block.
+     * @return whether the line is empty.
+     */
+    public boolean isEmpty(final int line) {
+        return lineStarts[line] == lineEnds[line];
+    }
+
+    public String getTitle(final int line) {
+        return getText(getTitleStart(line), getTitleEnd(line));
+    }
+
+    /**
+     * Get the start of the title: the first non-whitespace character before the first '('.
+     *
+     * @param line the line index in the current block.
+     * @return the start index of the title (inclusive).
+     */
+    public int getTitleStart(final int line) {
+        final int end = getOpeningIndex(line);
+        int start = lineStarts[line];
+        while (start < end && isWhitespace(start))
+            start++;
+        return start;
+    }
+
+    /**
+     * Get the end of the title: the position after the last non-whitespace character before the first '('.
+     *
+     * @param line the line index in the current block.
+     * @return the end index of the title (exclusive).
+     */
+    public int getTitleEnd(final int line) {
+        final int start = getTitleStart(line);
+        int end = getOpeningIndex(line);
+        while (end > start && isWhitespace(end - 1))
+            end--;
+        return end;
+    }
+
+    /**
+     * Get the release year, parsed like Integer.parseInt on the (at most four) characters after the first '('.
+     *
+     * @param line the line index in the current block.
+     * @return the release year.
+     */
+    public int getReleaseYear(final int line) {
+        final int start = openingIndices[line] + 1;
+        final int closingIndex = closingIndices[line];
+        if (start == 0 || closingIndex == -1)
+            throw new NumberFormatException("No release year in line: " + getText(lineStarts[line], lineEnds[line]));
+        final int end = Math.min(closingIndex, start + 4);
+        int index = start;
+        final boolean negative = index < end && getCharacter(index) == '-';
+        if (index < end && (negative || getCharacter(index) == '+'))
+            index++;
+        if (index == end)
+            throw new NumberFormatException("For input string: \"" + getText(start, end) + "\"");
+        int year = 0;
+        for (; index < end; index++) {
+            final int digit = getCharacter(index) - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("For input string: \"" + getText(start, end) + "\"");
+            year = 10 * year + digit;
+        }
+        return negative ? -year : year;
+    }
+
+    /**
+     * Add the actor names of a line to a list: the text after the first '/' (or the whole line if there is none),
+     * split on '/', without trailing empty names. Like String.split, empty text gives one empty name.
+     *
+     * @param line    the line index in the current block.
+     * @param trimmed whether the text after the first '/' is trimmed before it is split.
+     * @param actors  the list to add the actor names to.
+     * @return the number of actor names that were added.
+     */
+    public int getActors(final int line, final boolean trimmed, final List<String> actors) {
+        final int actorCount = findActors(line, trimmed);
+        for (int actor = 0; actor < actorCount; actor++)
+            actors.add(getText(actorStarts[actor], actorEnds[actor]));
+        return actorCount;
+    }
+
+    /**
+     * Find the actor names of a line without decoding them (see getActors); the bounds of the names can be retrieved
+     * with getActorStart and getActorEnd until the next call.
+     *
+     * @param line    the line index in the current block.
+     * @param trimmed whether the text after the first '/' is trimmed before it is split.
+     * @return the number of actor names.
+     */
+    public int findActors(final int line, final boolean trimmed) {
+        if (!actorsTokenized)
+            throw new IllegalStateException("The actors were not tokenized.");
+        final int firstSlash = slashStarts[line];
+        final int lastSlash = slashStarts[line + 1];
+        int start = firstSlash < lastSlash ? slashes[firstSlash] + 1 : lineStarts[line];
+        int end = lineEnds[line];
+        if (trimmed) {
+            while (start < end && isWhitespace(start))
+                start++;
+            while (end > start && isWhitespace(end - 1))
+                end--;
+        }
+        if (start == end)
+            return addActor(0, start, end);
+        // Drop trailing empty names by moving the end back over the slashes at the end of the text.
+        int separatorEnd = lastSlash;
+        while (separatorEnd > firstSlash && end > start && slashes[separatorEnd - 1] == end - 1) {
+            end--;
+            separatorEnd--;
+        }
+        if (start == end)
+            return 0;
+        int actorCount = 0;
+        int actorStart = start;
+        for (int separator = firstSlash; separator < separatorEnd; separator++) {
+            final int slash = slashes[separator];
+            if (slash >= start) {
+                actorCount = addActor(actorCount, actorStart, slash);
+                actorStart = slash + 1;
+            }
+        }
+        return addActor(actorCount, actorStart, end);
+    }
+
+    /**
+     * Get the start of an actor name that was found by findActors.
+     *
+     * @param actor the actor index in the line.
+     * @return the start index of the name (inclusive).
+     */
+    public int getActorStart(final int actor) {
+        return actorStarts[actor];
+    }
+
+    /**
+     * Get the end of an actor name that was found by findActors.
+     *
+     * @param actor the actor index in the line.
+     * @return the end index of the name (exclusive).
+     */
+    public int getActorEnd(final int actor) {
+        return actorEnds[actor];
+    }
+
+    /**
+     * Get the bytes of the current block, to which the start and end indices of titles and actor names refer.
+     *
+     * @return the bytes, or null when a single string line was tokenized.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Scan the whole words of a block for all delimiters.
+     *
+     * @param bytes the bytes.
+     * @param from  the start of the block (inclusive).
+     * @param to    the end of the block (exclusive).
+     * @return the index of the first byte that was not scanned.
+     */
+    private int scanWords(final byte[] bytes, final int from, final int to) {
+        final ByteBuffer words = getWords(bytes);
+        int index = from;
+        for (; index + 8 <= to; index += 8) {
+            final long word = words.getLong(index);
+            highBits |= word;
+            final long slashMatches = matches(word, SLASHES);
+            final long otherMatches = matches(word, NEWLINES) | matchesParentheses(word);
+            if (otherMatches == 0)
+                // Most words have no delimiter or only slashes, which are recorded without reading the bytes again.
+                addSlashes(slashMatches, index);
+            else
+                for (long matches = slashMatches | otherMatches; matches != 0; matches &= matches - 1) {
+                    final int matchIndex = index + (Long.numberOfTrailingZeros(matches) >>> 3);
+                    addDelimiter(bytes[matchIndex], matchIndex);
+                }
+        }
+        return index;
+    }
+
+    /**
+     * Scan the whole words of a block for newlines and, until the year of the current line has been found, for
+     * parentheses. A word with a newline is matched with the parentheses as well, since the next line starts in it.
+     *
+     * @param bytes the bytes.
+     * @param from  the start of the block (inclusive).
+     * @param to    the end of the block (exclusive).
+     * @return the index of the first byte that was not scanned.
+     */
+    private int scanWordsWithoutActors(final byte[] bytes, final int from, final int to) {
+        final ByteBuffer words = getWords(bytes);
+        int index = from;
+        for (; index + 8 <= to; index += 8) {
+            final long word = words.getLong(index);
+            highBits |= word;
+            long matches = matches(word, NEWLINES);
+            if (matches != 0 || closingIndex == -1)
+                matches |= matchesParentheses(word);
+            while (matches != 0) {
+                final int matchIndex = index + (Long.numberOfTrailingZeros(matches) >>> 3);
+                addDelimiter(bytes[matchIndex], matchIndex);
+                matches &= matches - 1;
+            }
+        }
+        return index;
+    }
+
+    private static long matches(final long word, final long pattern) {
+        // Exact zero-byte test (no false positives): the high bit of each byte is set where word and pattern agree.
+        final long difference = word ^ pattern;
+        return ~(((difference & LOW_BITS) + LOW_BITS) | difference | LOW_BITS);
+    }
+
+    private static long matchesParentheses(final long word) {
+        // '(' and ')' only differ in the lowest bit, and no other byte becomes ')' when that bit is set.
+        return matches(word | LOWEST_BITS, CLOSING_PARENTHESES);
+    }
+
+    private void addSlashes(final long slashMatches, final int index) {
+        if (slashCount + 8 > slashes.length)
+            slashes = Arrays.copyOf(slashes, 2 * slashes.length + 8);
+        for (long matches = slashMatches; matches != 0; matches &= matches - 1)
+            slashes[slashCount++] = index + (Long.numberOfTrailingZeros(matches) >>> 3);
+    }
+
+    private void setBlock(final byte[] block) {
+        this.block = block;
+        blockBuffer = ByteBuffer.wrap(block);
+    }
+
+    private ByteBuffer getWords(final byte[] bytes) {
+        if (words == null || words.array() != bytes)
+            words = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        return words;
+    }
+
+    private void startBlock(final byte[] bytes, final String text, final int from) {
+        this.bytes = bytes;
+        this.text = text;
+        lineCount = 0;
+        slashCount = 0;
+        highBits = 0;
+        slashStarts[0] = 0;
+        startLine(from);
+    }
+
+    private void startLine(final int start) {
+        lineStart = start;
+        openingIndex = -1;
+        closingIndex = -1;
+    }
+
+    private void addDelimiter(final int delimiter, final int index) {
+        switch (delimiter) {
+            case '\n':
+                endLine(index > lineStart && bytes[index - 1] == '\r' ? index - 1 : index, index + 1);
+                break;
+            case '(':
+                if (openingIndex == -1)
+                    openingIndex = index;
+                break;
+            case ')':
+                if (openingIndex != -1 && closingIndex == -1)
+                    closingIndex = index;
+                break;
+            default:
+                if (slashCount == slashes.length)
+                    slashes = Arrays.copyOf(slashes, 2 * slashCount);
+                slashes[slashCount++] = index;
+                break;
+        }
+    }
+
+    private void endLine(final int lineEnd, final int nextLineStart) {
+        if (lineCount == lineStarts.length)
+            allocateLines(2 * lineStarts.length);
+        lineStarts[lineCount] = lineStart;
+        lineEnds[lineCount] = lineEnd;
+        openingIndices[lineCount] = openingIndex;
+        closingIndices[lineCount] = closingIndex;
+        slashStarts[++lineCount] = slashCount;
+        startLine(nextLineStart);
+    }
+
+    private void allocateLines(final int capacity) {
+        lineStarts = lineStarts == null ? new int[capacity] : Arrays.copyOf(lineStarts, capacity);
+        lineEnds = lineEnds == null ? new int[capacity] : Arrays.copyOf(lineEnds, capacity);
+        openingIndices = openingIndices == null ? new int[capacity] : Arrays.copyOf(openingIndices, capacity);
+        closingIndices = closingIndices == null ? new int[capacity] : Arrays.copyOf(closingIndices, capacity);
+        slashStarts = slashStarts == null ? new int[capacity + 1] : Arrays.copyOf(slashStarts, capacity + 1);
+    }
+
+    private int getOpeningIndex(final int line) {
+        final int openingIndex = openingIndices[line];
+        if (openingIndex == -1)
+            throw new IllegalArgumentException("No release year in line: " + getText(lineStarts[line], lineEnds[line]));
+        return openingIndex;
+    }
+
+    private int addActor(final int actorCount, final int start, final int end) {
+        if (actorCount == actorStarts.length) {
+            actorStarts = Arrays.copyOf(actorStarts, 2 * actorCount);
+            actorEnds = Arrays.copyOf(actorEnds, 2 * actorCount);
+        }
+        actorStarts[actorCount] = start;
+        actorEnds[actorCount] = end;
+        return actorCount + 1;
+    }
+
+    private int getCharacter(final int index) {
+        return bytes != null ? bytes[index] & 0xFF : text.charAt(index);
+    }
+
+    private boolean isWhitespace(final int index) {
+        // Like String.trim: all characters up to and including the space (UTF-8 continuation bytes are above 0x7F).
+        return getCharacter(index) <= ' ';
+    }
+
+    private String getText(final int start, final int end) {
+        if (bytes == null)
+            return text.substring(start, end);
+        // Decoding ASCII as ISO-8859-1 gives the same string without checking the bytes for multi-byte characters.
+        return new String(bytes, start, end - start,
+                          (highBits & ~LOW_BITS) == 0 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    private static long findLineStart(final FileChannel channel, final long from, final long size,
+                                      final ByteBuffer scanBuffer) throws IOException {
+        long scanPosition = Math.max(0, from - 1);
+        while (scanPosition < size) {
+            scanBuffer.clear();
+            final int byteCount = channel.read(scanBuffer, scanPosition);
+            if (byteCount <= 0)
+                break;
+            for (int index = 0; index < byteCount; index++)
+                if (scanBuffer.get(index) == '\n')
+                    return scanPosition + index + 1;
+            scanPosition += byteCount;
+        }
+        return size;
+    }
+}
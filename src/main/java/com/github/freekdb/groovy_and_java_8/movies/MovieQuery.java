@@ -0,0 +1,284 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+
+/**
+ * Declarative query over the rows of a movies list: the movies themselves or their cast entries (one row per movie and
+ * actor). A query is built from a source, filters, an optional group-by, and an aggregation (count, top-K, or any
+ * collector), and is then registered with a MovieQueryEngine, which runs all registered queries in a single pass:
+ * <pre>
+ * final MovieQueryEngine engine = new MovieQueryEngine();
+ * final MovieQueryEngine.Result&lt;List&lt;Map.Entry&lt;Actor, Long&gt;&gt;&gt; mostActive = engine.register(
+ *     MovieQuery.castEntries().filter(entry -&gt; entry.getReleaseYear() &gt;= 1990)
+ *         .groupBy(CastEntry::getActor).topK(1));
+ * engine.run(movies, true);
+ * </pre>
+ * Groups are kept in order of first appearance (also in parallel scans), so top-K ties are resolved in favour of the
+ * group that appears first.
+ *
+ * @param <T> the row type.
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class MovieQuery<T> {
+    private final boolean castEntryRows;
+    private final Predicate<? super T> filter;
+
+    /**
+     * Create a query.
+     *
+     * @param castEntryRows whether the rows are cast entries (instead of movies).
+     * @param filter        the filter, or null to keep all rows.
+     */
+    private MovieQuery(final boolean castEntryRows, final Predicate<? super T> filter) {
+        this.castEntryRows = castEntryRows;
+        this.filter = filter;
+    }
+
+    public static MovieQuery<Movie> movies() {
+        return new MovieQuery<>(false, null);
+    }
+
+    public static MovieQuery<CastEntry> castEntries() {
+        return new MovieQuery<>(true, null);
+    }
+
+    public MovieQuery<T> filter(final Predicate<? super T> predicate) {
+        final Predicate<? super T> previousFilter = filter;
+        return new MovieQuery<>(castEntryRows, previousFilter != null
+                                               ? row -> previousFilter.test(row) && predicate.test(row)
+                                               : predicate);
+    }
+
+    public <K> Grouped<T, K> groupBy(final Function<? super T, ? extends K> classifier) {
+        return new Grouped<>(this, classifier);
+    }
+
+    /**
+     * Group the rows by two keys, for example an actor and a year.
+     *
+     * @param classifier1 the function for the first key.
+     * @param classifier2 the function for the second key.
+     * @param <K1>        the type of the first key.
+     * @param <K2>        the type of the second key.
+     * @return the grouped query, with the key pairs as map entries.
+     */
+    public <K1, K2> Grouped<T, Map.Entry<K1, K2>> groupBy(final Function<? super T, ? extends K1> classifier1,
+                                                          final Function<? super T, ? extends K2> classifier2) {
+        return new Grouped<>(this, row -> new AbstractMap.SimpleImmutableEntry<>(classifier1.apply(row),
+                                                                                 classifier2.apply(row)));
+    }
+
+    public Aggregation<T, Long> count() {
+        return collect(Collector.of(() -> new long[1], (count, row) -> count[0]++,
+                                    (count1, count2) -> {
+                                        count1[0] += count2[0];
+                                        return count1;
+                                    },
+                                    count -> count[0]));
+    }
+
+    /**
+     * Aggregate the (filtered) rows with a collector, which should be mergeable like any collector for parallel
+     * streams.
+     *
+     * @param collector the collector.
+     * @param <R>       the result type.
+     * @return the aggregation, which can be registered with an engine.
+     */
+    public <R> Aggregation<T, R> collect(final Collector<? super T, ?, R> collector) {
+        return new Aggregation<>(castEntryRows, filter, collector);
+    }
+
+    /**
+     * Query with the rows grouped by a key.
+     *
+     * @param <T> the row type.
+     * @param <K> the key type.
+     */
+    public static class Grouped<T, K> {
+        private final MovieQuery<T> query;
+        private final Function<? super T, ? extends K> classifier;
+
+        private Grouped(final MovieQuery<T> query, final Function<? super T, ? extends K> classifier) {
+            this.query = query;
+            this.classifier = classifier;
+        }
+
+        /**
+         * Count the rows per group.
+         *
+         * @return the aggregation with the counts per group, in order of first appearance.
+         */
+        public Aggregation<T, Map<K, Long>> count() {
+            return query.collect(Collector.of(LinkedHashMap::new, this::countRow, Grouped::combineCounts,
+                                              Grouped::toCounts));
+        }
+
+        /**
+         * Count the rows per group and keep the groups with the highest counts.
+         *
+         * @param topCount the maximum number of groups.
+         * @return the aggregation with the groups and counts, with the highest count first.
+         */
+        public Aggregation<T, List<Map.Entry<K, Long>>> topK(final int topCount) {
+            return query.collect(Collector.of(LinkedHashMap::new, this::countRow, Grouped::combineCounts,
+                                              counts -> getTop(counts, topCount)));
+        }
+
+        private void countRow(final LinkedHashMap<K, long[]> counts, final T row) {
+            counts.computeIfAbsent(classifier.apply(row), key -> new long[1])[0]++;
+        }
+
+        private static <K> LinkedHashMap<K, long[]> combineCounts(final LinkedHashMap<K, long[]> counts1,
+                                                                  final LinkedHashMap<K, long[]> counts2) {
+            counts2.forEach((key, count) -> counts1.merge(key, count, (count3, count4) -> {
+                count3[0] += count4[0];
+                return count3;
+            }));
+            return counts1;
+        }
+
+        private static <K> Map<K, Long> toCounts(final LinkedHashMap<K, long[]> counts) {
+            final Map<K, Long> result = new LinkedHashMap<>();
+            counts.forEach((key, count) -> result.put(key, count[0]));
+            return result;
+        }
+
+        /**
+         * Select the groups with the highest counts with a bounded heap, without sorting all groups. The head of the
+         * heap is the lowest group in the top list: the lowest count and, for equal counts, the latest appearance.
+         *
+         * @param counts   the counts per group, in order of first appearance.
+         * @param topCount the maximum number of groups.
+         * @param <K>      the key type.
+         * @return the top groups, with the highest count first.
+         */
+        private static <K> List<Map.Entry<K, Long>> getTop(final LinkedHashMap<K, long[]> counts,
+                                                           final int topCount) {
+            final PriorityQueue<RankedEntry<K>> topEntries = new PriorityQueue<>();
+            int appearance = 0;
+            for (final Map.Entry<K, long[]> entry : counts.entrySet()) {
+                topEntries.add(new RankedEntry<>(entry.getKey(), entry.getValue()[0], appearance++));
+                if (topEntries.size() > topCount)
+                    topEntries.poll();
+            }
+            final List<Map.Entry<K, Long>> top = new ArrayList<>();
+            while (!topEntries.isEmpty())
+                top.add(0, topEntries.poll().toEntry());
+            return top;
+        }
+    }
+
+    /**
+     * Group with its count and the position of its first appearance, ordered from the lowest to the highest rank.
+     *
+     * @param <K> the key type.
+     */
+    private static class RankedEntry<K> implements Comparable<RankedEntry<K>> {
+        private final K key;
+        private final long count;
+        private final int appearance;
+
+        private RankedEntry(final K key, final long count, final int appearance) {
+            this.key = key;
+            this.count = count;
+            this.appearance = appearance;
+        }
+
+        private Map.Entry<K, Long> toEntry() {
+            return new AbstractMap.SimpleImmutableEntry<>(key, count);
+        }
+
+        @Override
+        public int compareTo(final RankedEntry<K> other) {
+            final int countComparison = Long.compare(count, other.count);
+            return countComparison != 0 ? countComparison : Integer.compare(other.appearance, appearance);
+        }
+    }
+
+    /**
+     * Query that is ready to be registered with an engine: the rows it reads, its filter, and its collector.
+     *
+     * @param <T> the row type.
+     * @param <R> the result type.
+     */
+    public static class Aggregation<T, R> {
+        private final boolean castEntryRows;
+        private final Predicate<? super T> filter;
+        private final Collector<? super T, Object, R> collector;
+
+        @SuppressWarnings("unchecked")
+        private Aggregation(final boolean castEntryRows, final Predicate<? super T> filter,
+                            final Collector<? super T, ?, R> collector) {
+            this.castEntryRows = castEntryRows;
+            this.filter = filter;
+            this.collector = (Collector<? super T, Object, R>) collector;
+        }
+
+        boolean readsCastEntries() {
+            return castEntryRows;
+        }
+
+        Object createContainer() {
+            return collector.supplier().get();
+        }
+
+        Object combine(final Object container1, final Object container2) {
+            return collector.combiner().apply(container1, container2);
+        }
+
+        R finish(final Object container) {
+            return collector.finisher().apply(container);
+        }
+
+        /**
+         * Get the accumulator once, so the engine does not have to ask the collector for it on every row.
+         *
+         * @return the accumulator with the filter (if there is one).
+         */
+        @SuppressWarnings("unchecked")
+        BiConsumer<Object, T> getAccumulator() {
+            final BiConsumer<Object, ? super T> accumulator = collector.accumulator();
+            if (filter == null)
+                return (BiConsumer<Object, T>) accumulator;
+            return (container, row) -> {
+                if (filter.test(row))
+                    accumulator.accept(container, row);
+            };
+        }
+    }
+
+    /**
+     * Row with a movie and one of its actors.
+     */
+    public static class CastEntry {
+        private final Movie movie;
+        private final Actor actor;
+
+        public CastEntry(final Movie movie, final Actor actor) {
+            this.movie = movie;
+            this.actor = actor;
+        }
+
+        public Movie getMovie() {
+            return movie;
+        }
+
+        public Actor getActor() {
+            return actor;
+        }
+
+        public int getReleaseYear() {
+            return movie.getReleaseYear();
+        }
+    }
+}
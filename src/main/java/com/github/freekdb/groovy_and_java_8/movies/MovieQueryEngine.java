@@ -0,0 +1,138 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Collector;
+
+/**
+ * Engine that runs all registered movie queries in one shared scan, like a Fork runs its sinks, but with a typed result
+ * per query. The queries are fused into a single collector: every worker of a parallel scan has one container per
+ * query, and for every movie the engine calls the movie queries and then walks the actors once, creating one cast
+ * entry that is passed to all cast entry queries. Adding a query adds work per row, but not another pass over the
+ * data.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class MovieQueryEngine {
+    private final List<Registration<?, ?>> registrations = new ArrayList<>();
+
+    /**
+     * Register a query, which will be answered by the next run.
+     *
+     * @param aggregation the query.
+     * @param <R>         the result type.
+     * @return the handle for the result.
+     */
+    public <R> Result<R> register(final MovieQuery.Aggregation<?, R> aggregation) {
+        final Registration<?, R> registration = new Registration<>(aggregation);
+        registrations.add(registration);
+        return registration.result;
+    }
+
+    /**
+     * Run all registered queries in one pass over the movies.
+     *
+     * @param movies   the movies.
+     * @param parallel whether to scan the movies with a parallel stream.
+     */
+    public void run(final List<Movie> movies, final boolean parallel) {
+        final int queryCount = registrations.size();
+        final List<BiConsumer<Object, Movie>> movieAccumulators = new ArrayList<>();
+        final List<BiConsumer<Object, MovieQuery.CastEntry>> castEntryAccumulators = new ArrayList<>();
+        final int[] movieQueryIndexes = new int[queryCount];
+        final int[] castEntryQueryIndexes = new int[queryCount];
+        for (int queryIndex = 0; queryIndex < queryCount; queryIndex++) {
+            final Registration<?, ?> registration = registrations.get(queryIndex);
+            if (registration.aggregation.readsCastEntries()) {
+                castEntryQueryIndexes[castEntryAccumulators.size()] = queryIndex;
+                castEntryAccumulators.add(registration.getCastEntryAccumulator());
+            } else {
+                movieQueryIndexes[movieAccumulators.size()] = queryIndex;
+                movieAccumulators.add(registration.getMovieAccumulator());
+            }
+        }
+
+        final Collector<Movie, Object[], Object[]> fusedCollector = Collector.of(
+            () -> {
+                final Object[] containers = new Object[queryCount];
+                for (int queryIndex = 0; queryIndex < queryCount; queryIndex++)
+                    containers[queryIndex] = registrations.get(queryIndex).aggregation.createContainer();
+                return containers;
+            },
+            (containers, movie) -> {
+                for (int index = 0; index < movieAccumulators.size(); index++)
+                    movieAccumulators.get(index).accept(containers[movieQueryIndexes[index]], movie);
+                if (!castEntryAccumulators.isEmpty())
+                    for (final Actor actor : movie.getActors()) {
+                        final MovieQuery.CastEntry castEntry = new MovieQuery.CastEntry(movie, actor);
+                        for (int index = 0; index < castEntryAccumulators.size(); index++)
+                            castEntryAccumulators.get(index).accept(containers[castEntryQueryIndexes[index]],
+                                                                    castEntry);
+                    }
+            },
+            (containers1, containers2) -> {
+                for (int queryIndex = 0; queryIndex < queryCount; queryIndex++)
+                    containers1[queryIndex] = registrations.get(queryIndex).aggregation
+                        .combine(containers1[queryIndex], containers2[queryIndex]);
+                return containers1;
+            });
+
+        final Object[] containers = (parallel ? movies.parallelStream() : movies.stream()).collect(fusedCollector);
+        for (int queryIndex = 0; queryIndex < queryCount; queryIndex++)
+            registrations.get(queryIndex).finish(containers[queryIndex]);
+    }
+
+    /**
+     * Handle for the result of a registered query.
+     *
+     * @param <R> the result type.
+     */
+    public static class Result<R> {
+        private R value;
+        private boolean available;
+
+        /**
+         * Get the result of the last run.
+         *
+         * @return the result.
+         * @throws IllegalStateException if the engine has not run yet.
+         */
+        public R get() {
+            if (!available)
+                throw new IllegalStateException("The query engine has not run yet.");
+            return value;
+        }
+    }
+
+    /**
+     * Registered query with its result handle.
+     *
+     * @param <T> the row type.
+     * @param <R> the result type.
+     */
+    private static class Registration<T, R> {
+        private final MovieQuery.Aggregation<T, R> aggregation;
+        private final Result<R> result = new Result<>();
+
+        @SuppressWarnings("unchecked")
+        private Registration(final MovieQuery.Aggregation<?, R> aggregation) {
+            this.aggregation = (MovieQuery.Aggregation<T, R>) aggregation;
+        }
+
+        @SuppressWarnings("unchecked")
+        private BiConsumer<Object, Movie> getMovieAccumulator() {
+            return (BiConsumer<Object, Movie>) aggregation.getAccumulator();
+        }
+
+        @SuppressWarnings("unchecked")
+        private BiConsumer<Object, MovieQuery.CastEntry> getCastEntryAccumulator() {
+            return (BiConsumer<Object, MovieQuery.CastEntry>) aggregation.getAccumulator();
+        }
+
+        private void finish(final Object container) {
+            result.value = aggregation.finish(container);
+            result.available = true;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Long-running local HTTP service that loads the movies once and answers the movie queries concurrently, so a question
+ * does not need a new JVM that reads the file again. Every request runs on its own virtual thread when the Java runtime
+ * has them (Java 21 and later, found by reflection so the code still compiles for Java 8), and on a cached thread pool
+ * otherwise. The service only listens on the loopback address.
+ * <p>
+ * The queries read the immutable movie store and the year by actor cube, so they need no locking. The endpoints are:
+ * <pre>
+ * /year-with-most-movies
+ * /most-active-actor
+ * /most-active-actor-in-year[?year=1999]
+ * /actor-count?name=Eastwood,+Clint[&amp;from=1990&amp;to=1999]
+ * /distinct-count?field=titles|years|actors
+ * /metrics
+ * </pre>
+ * The service measures the latency of every request per endpoint; /metrics shows the request counts with the mean,
+ * p50, p99, and maximum latencies.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class MovieQueryService {
+    static final int DEFAULT_PORT = 8642;
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final MovieStore store;
+    private final YearActorCube cube;
+    private final JavaMovieQueries queries = new JavaMovieQueries();
+    private final int distinctYearCount;
+    private final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Create a service for a movie store; the year by actor cube and the distinct counts are calculated once.
+     *
+     * @param store the movie store.
+     */
+    public MovieQueryService(final MovieStore store) {
+        this.store = store;
+        this.cube = new YearActorCube(store);
+        int yearCount = 0;
+        for (int year = cube.getFirstYear(); year <= cube.getLastYear(); year++)
+            if (cube.countMovies(year, year) > 0)
+                yearCount++;
+        this.distinctYearCount = yearCount;
+
+        addEndpoint("/year-with-most-movies", parameters -> queries.yearWithMostMoviesColumnar(store));
+        addEndpoint("/most-active-actor", parameters -> queries.mostActiveActorColumnar(store));
+        addEndpoint("/most-active-actor-in-year", this::mostActiveActorInYear);
+        addEndpoint("/actor-count", this::actorCount);
+        addEndpoint("/distinct-count", this::distinctCount);
+        addEndpoint("/metrics", parameters -> getMetrics());
+    }
+
+    /**
+     * Main method.
+     *
+     * @param arguments command-line arguments: "--port number" for the port (8642 by default) and "--file path" for
+     *                  the movies file (data/movies-mpaa.txt by default).
+     */
+    public static void main(final String[] arguments) {
+        final List<String> options = Arrays.asList(arguments);
+        final int portIndex = options.indexOf("--port");
+        final int fileIndex = options.indexOf("--file");
+        final int port = portIndex != -1 ? Integer.parseInt(options.get(portIndex + 1)) : DEFAULT_PORT;
+        final String filePath = fileIndex != -1 ? options.get(fileIndex + 1) : "data/movies-mpaa.txt";
+        try {
+            final MovieQueryService service = new MovieQueryService(MovieSnapshot.loadOrCreate(Paths.get(filePath)));
+            service.start(port);
+            System.out.println("Serving " + service.store.getMovieCount() + " movies from " + filePath + " on http://"
+                               + InetAddress.getLoopbackAddress().getHostAddress() + ":" + service.getPort() + "/ ("
+                               + getThreadKind() + ").");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print(service.getMetrics())));
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Start listening on a port of the loopback address. The HTTP server writes the headers and the body of a response
+     * separately, so with Nagle's algorithm the body waits for the (delayed) acknowledgement of the headers, which adds
+     * about 40 ms to every request on a keep-alive connection. TCP_NODELAY is therefore switched on, unless the system
+     * property has been set explicitly; the property is read once, when the first server is created.
+     *
+     * @param port the port, or 0 for any free port.
+     * @throws IOException if the port cannot be bound.
+     */
+    public void start(final int port) throws IOException {
+        if (System.getProperty(NO_DELAY_PROPERTY) == null)
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        endpoints.forEach((path, endpoint) -> server.createContext(path, exchange -> handle(exchange, path, endpoint)));
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the service, after the requests that are being handled have finished (waiting at most a second).
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the request counts and latencies per endpoint.
+     *
+     * @return the metrics as a text table.
+     */
+    public String getMetrics() {
+        final StringBuilder metrics = new StringBuilder(String.format("%-28s %9s %10s %10s %10s %10s%n", "endpoint",
+                                                                      "requests", "mean us", "p50 us", "p99 us",
+                                                                      "max us"));
+        endpoints.forEach((path, endpoint) -> {
+            final LatencyHistogram latencies = endpoint.latencies;
+            metrics.append(String.format("%-28s %9d %10.1f %10.1f %10.1f %10.1f%n", path, latencies.getCount(),
+                                         latencies.getMeanNanos() / 1e3, latencies.getPercentileNanos(0.5) / 1e3,
+                                         latencies.getPercentileNanos(0.99) / 1e3,
+                                         latencies.getMaximumNanos() / 1e3));
+        });
+        return metrics.toString();
+    }
+
+    /**
+     * Create an executor that runs every task on a new virtual thread, or a cached thread pool if the Java runtime has
+     * no virtual threads.
+     *
+     * @return the executor.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    static String getThreadKind() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return "virtual threads";
+        } catch (final NoSuchMethodException e) {
+            return "platform threads";
+        }
+    }
+
+    private String mostActiveActorInYear(final Map<String, String> parameters) {
+        if (!parameters.containsKey("year"))
+            return queries.mostActiveActorInSingleYearColumnar(store);
+        final int year = Integer.parseInt(parameters.get("year"));
+        final List<YearActorCube.ActorCount> mostActive = cube.getMostActiveActors(year, year, 1);
+        if (mostActive.isEmpty())
+            return "no movies in " + year + ".";
+        return "most productive actor in " + year + ": " + store.getActor(mostActive.get(0).getActorId()).getFullName()
+               + ", who worked on " + mostActive.get(0).getMovieCount() + " movies.";
+    }
+
+    private String actorCount(final Map<String, String> parameters) {
+        final String actorName = parameters.get("name");
+        if (actorName == null)
+            throw new IllegalArgumentException("The name parameter (\"Last, First\") is missing.");
+        final int fromYear = parameters.containsKey("from") ? Integer.parseInt(parameters.get("from"))
+                                                             : cube.getFirstYear();
+        final int toYear = parameters.containsKey("to") ? Integer.parseInt(parameters.get("to")) : cube.getLastYear();
+        return actorName + " acted in " + cube.countActorMovies(actorName, fromYear, toYear) + " movies from "
+               + fromYear + " to " + toYear + ".";
+    }
+
+    private String distinctCount(final Map<String, String> parameters) {
+        final String field = parameters.getOrDefault("field", "");
+        switch (field) {
+            case "titles":
+                return "distinct titles: " + store.getTitleCount() + ".";
+            case "years":
+                return "distinct years: " + distinctYearCount + ".";
+            case "actors":
+                return "distinct actors: " + store.getActorCount() + ".";
+            default:
+                throw new IllegalArgumentException("The field parameter should be titles, years, or actors.");
+        }
+    }
+
+    private void addEndpoint(final String path, final Function<Map<String, String>, String> query) {
+        endpoints.put(path, new Endpoint(query));
+    }
+
+    /**
+     * Answer a request and record its latency. A context also receives the paths that start with its path, which are
+     * answered with 404; invalid parameters are answered with 400 and failed queries with 500.
+     *
+     * @param exchange the request and response.
+     * @param path     the path of the endpoint.
+     * @param endpoint the endpoint.
+     * @throws IOException if the response cannot be sent.
+     */
+    private void handle(final HttpExchange exchange, final String path, final Endpoint endpoint) throws IOException {
+        final long start = System.nanoTime();
+        int status = 200;
+        String body;
+        try {
+            if (!exchange.getRequestURI().getPath().equals(path)) {
+                status = 404;
+                body = "Unknown endpoint; the endpoints are " + endpoints.keySet() + ".";
+            } else if (!"GET".equals(exchange.getRequestMethod())) {
+                status = 405;
+                body = "Only GET requests are supported.";
+            } else
+                body = endpoint.query.apply(parseParameters(exchange.getRequestURI().getRawQuery()));
+        } catch (final IllegalArgumentException e) {
+            status = 400;
+            body = e.getMessage();
+        } catch (final RuntimeException e) {
+            status = 500;
+            body = "The query failed: " + e + ".";
+        }
+        final byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (final OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+        endpoint.latencies.record(System.nanoTime() - start);
+    }
+
+    private static Map<String, String> parseParameters(final String rawQuery) {
+        final Map<String, String> parameters = new HashMap<>();
+        if (rawQuery != null)
+            for (final String parameter : rawQuery.split("&")) {
+                final int equalsIndex = parameter.indexOf('=');
+                if (equalsIndex != -1)
+                    parameters.put(decode(parameter.substring(0, equalsIndex)),
+                                   decode(parameter.substring(equalsIndex + 1)));
+            }
+        return parameters;
+    }
+
+    private static String decode(final String text) {
+        try {
+            return URLDecoder.decode(text, StandardCharsets.UTF_8.name());
+        } catch (final UnsupportedEncodingException e) {
+            // Every Java platform is required to support UTF-8.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Query with the latencies of its requests.
+     */
+    private static class Endpoint {
+        private final Function<Map<String, String>, String> query;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+
+        private Endpoint(final Function<Map<String, String>, String> query) {
+            this.query = query;
+        }
+    }
+}
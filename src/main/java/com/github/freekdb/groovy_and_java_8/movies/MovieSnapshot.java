@@ -0,0 +1,304 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Versioned binary snapshot of a movie store, so the movies file only has to be parsed once. The snapshot records the
+ * size, modification time, and CRC-32 checksum of the source file and is only used while the source file is
+ * unchanged. The source file is only checksummed again when its size or modification time differs from the snapshot
+ * (like QueryResultCache.fingerprint), so a warm load does not read the movies file at all. Loading memory-maps the
+ * snapshot and copies the int columns with bulk reads.
+ * <p>
+ * Layout (big-endian): a header with magic number, version, source size, modification time, and checksum, and the
+ * counts; the int arrays
+ * with release years, title ids, cast offsets, and cast actor ids; the title and actor dictionaries as int offset
+ * arrays followed by the UTF-8 bytes; and a CRC-32 checksum of everything before it.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class MovieSnapshot {
+    private static final int MAGIC_NUMBER = 0x4D56534E;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 2 * 4 + 3 * 8 + 4 * 4 + 2 * 8;
+    private static final int TRAILER_SIZE = 8;
+    private static final int MAXIMUM_MAPPED_SIZE = 1 << 30;
+
+    private MovieSnapshot() {
+    }
+
+    /**
+     * Load the store for a movies file from its snapshot ("file.snapshot"), or read the movies file and write a new
+     * snapshot when there is no valid snapshot. When only the modification time of the movies file has changed, the
+     * snapshot is used and written again with the new time.
+     *
+     * @param sourcePath the movies file path.
+     * @return the movie store.
+     * @throws IOException if the movies file cannot be read.
+     */
+    public static MovieStore loadOrCreate(final Path sourcePath) throws IOException {
+        final Path snapshotPath = getSnapshotPath(sourcePath);
+        final SourceVersion source = new SourceVersion(sourcePath);
+        if (Files.exists(snapshotPath)) {
+            try {
+                final MovieStore store = load(snapshotPath, source);
+                if (source.checksumCalculated)
+                    writeQuietly(store, snapshotPath, source);
+                return store;
+            } catch (final IOException e) {
+                System.out.println("Snapshot " + snapshotPath + " cannot be used (" + e.getMessage() + "), rebuilding.");
+            }
+        }
+        final MovieStore store = MovieStore.read(sourcePath);
+        writeQuietly(store, snapshotPath, source);
+        return store;
+    }
+
+    /**
+     * Get the snapshot path that belongs to a movies file: the movies file path with ".snapshot" appended.
+     *
+     * @param sourcePath the movies file path.
+     * @return the snapshot file path.
+     */
+    public static Path getSnapshotPath(final Path sourcePath) {
+        return Paths.get(sourcePath.toString() + ".snapshot");
+    }
+
+    /**
+     * Load a snapshot, checking that it belongs to the current version of the movies file.
+     *
+     * @param snapshotPath the snapshot file path.
+     * @param sourcePath   the movies file path.
+     * @return the movie store.
+     * @throws IOException if the snapshot cannot be read, is corrupt, or does not match the movies file.
+     */
+    public static MovieStore load(final Path snapshotPath, final Path sourcePath) throws IOException {
+        return load(snapshotPath, new SourceVersion(sourcePath));
+    }
+
+    /**
+     * Write a snapshot of a store; the snapshot is written to a temporary file first and then moved into place.
+     *
+     * @param store        the movie store.
+     * @param snapshotPath the snapshot file path.
+     * @param sourcePath   the movies file path.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public static void write(final MovieStore store, final Path snapshotPath, final Path sourcePath)
+        throws IOException {
+        write(store, snapshotPath, new SourceVersion(sourcePath));
+    }
+
+    /**
+     * Calculate the CRC-32 checksum of a file.
+     *
+     * @param filePath the file path.
+     * @return the checksum.
+     * @throws IOException if the file cannot be read.
+     */
+    public static long checksum(final Path filePath) throws IOException {
+        try (final FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            return checksum(channel, channel.size());
+        }
+    }
+
+    private static MovieStore load(final Path snapshotPath, final SourceVersion source) throws IOException {
+        try (final FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            final long snapshotSize = channel.size();
+            if (snapshotSize < HEADER_SIZE + TRAILER_SIZE)
+                throw new IOException("snapshot is truncated");
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC_NUMBER)
+                throw new IOException("not a movie snapshot");
+            final int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("snapshot version " + version + " instead of " + VERSION);
+            if (!source.matches(header.getLong(), header.getLong(), header.getLong()))
+                throw new IOException("movies file has changed");
+            final ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, snapshotSize - TRAILER_SIZE,
+                                                   TRAILER_SIZE);
+            if (trailer.getLong() != checksum(channel, snapshotSize - TRAILER_SIZE))
+                throw new IOException("snapshot checksum mismatch");
+
+            final int movieCount = header.getInt();
+            final int titleCount = header.getInt();
+            final int actorCount = header.getInt();
+            final int castSize = header.getInt();
+            final long titleByteCount = header.getLong();
+            final long actorByteCount = header.getLong();
+            long position = HEADER_SIZE;
+            final int[] releaseYears = readInts(channel, position, movieCount);
+            position += 4L * movieCount;
+            final int[] titleIds = readInts(channel, position, movieCount);
+            position += 4L * movieCount;
+            final int[] castOffsets = readInts(channel, position, movieCount + 1);
+            position += 4L * (movieCount + 1);
+            final int[] castActorIds = readInts(channel, position, castSize);
+            position += 4L * castSize;
+            final String[] titles = readStrings(channel, position, titleCount, titleByteCount);
+            position += 4L * (titleCount + 1) + titleByteCount;
+            final String[] actorNames = readStrings(channel, position, actorCount, actorByteCount);
+            return new MovieStore(releaseYears, titleIds, titles, actorNames, castOffsets, castActorIds);
+        }
+    }
+
+    private static void writeQuietly(final MovieStore store, final Path snapshotPath, final SourceVersion source) {
+        try {
+            write(store, snapshotPath, source);
+        } catch (final IOException e) {
+            System.out.println("Snapshot " + snapshotPath + " cannot be written (" + e.getMessage() + ").");
+        }
+    }
+
+    private static void write(final MovieStore store, final Path snapshotPath, final SourceVersion source)
+        throws IOException {
+        final byte[][] titleBytes = encode(store.getTitles());
+        final byte[][] actorBytes = encode(store.getActorNames());
+        final Path temporaryPath = Paths.get(snapshotPath.toString() + ".tmp");
+        final CRC32 crc = new CRC32();
+        try (final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+            new CheckedOutputStream(Files.newOutputStream(temporaryPath), crc), 1 << 16))) {
+            output.writeInt(MAGIC_NUMBER);
+            output.writeInt(VERSION);
+            output.writeLong(source.size);
+            output.writeLong(source.modifiedMillis);
+            output.writeLong(source.getChecksum());
+            output.writeInt(store.getMovieCount());
+            output.writeInt(titleBytes.length);
+            output.writeInt(actorBytes.length);
+            output.writeInt(store.getCastSize());
+            output.writeLong(getTotalLength(titleBytes));
+            output.writeLong(getTotalLength(actorBytes));
+            writeInts(output, store.getReleaseYears());
+            writeInts(output, store.getTitleIds());
+            writeInts(output, store.getCastOffsets());
+            writeInts(output, store.getCastActorIds());
+            writeStrings(output, titleBytes);
+            writeStrings(output, actorBytes);
+            output.flush();
+            output.writeLong(crc.getValue());
+        }
+        Files.move(temporaryPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static byte[][] encode(final String[] strings) throws IOException {
+        final byte[][] encodedStrings = new byte[strings.length][];
+        long totalLength = 0;
+        for (int index = 0; index < strings.length; index++) {
+            encodedStrings[index] = strings[index].getBytes(StandardCharsets.UTF_8);
+            totalLength += encodedStrings[index].length;
+        }
+        if (totalLength > Integer.MAX_VALUE)
+            throw new IOException("dictionary larger than 2 GB");
+        return encodedStrings;
+    }
+
+    private static long getTotalLength(final byte[][] encodedStrings) {
+        long totalLength = 0;
+        for (final byte[] encodedString : encodedStrings)
+            totalLength += encodedString.length;
+        return totalLength;
+    }
+
+    private static void writeInts(final DataOutputStream output, final int[] values) throws IOException {
+        for (final int value : values)
+            output.writeInt(value);
+    }
+
+    private static void writeStrings(final DataOutputStream output, final byte[][] encodedStrings)
+        throws IOException {
+        int offset = 0;
+        output.writeInt(offset);
+        for (final byte[] encodedString : encodedStrings) {
+            offset += encodedString.length;
+            output.writeInt(offset);
+        }
+        for (final byte[] encodedString : encodedStrings)
+            output.write(encodedString);
+    }
+
+    private static int[] readInts(final FileChannel channel, final long position, final int count)
+        throws IOException {
+        final int[] values = new int[count];
+        int valueIndex = 0;
+        while (valueIndex < count) {
+            final int chunkCount = Math.min(count - valueIndex, MAXIMUM_MAPPED_SIZE / 4);
+            final IntBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position + 4L * valueIndex,
+                                                4L * chunkCount).asIntBuffer();
+            chunk.get(values, valueIndex, chunkCount);
+            valueIndex += chunkCount;
+        }
+        return values;
+    }
+
+    private static String[] readStrings(final FileChannel channel, final long position, final int count,
+                                        final long byteCount) throws IOException {
+        final int[] offsets = readInts(channel, position, count + 1);
+        final ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position + 4L * (count + 1), byteCount);
+        final String[] strings = new String[count];
+        byte[] stringBytes = new byte[256];
+        for (int index = 0; index < count; index++) {
+            final int length = offsets[index + 1] - offsets[index];
+            if (stringBytes.length < length)
+                stringBytes = new byte[Math.max(length, 2 * stringBytes.length)];
+            bytes.get(stringBytes, 0, length);
+            strings[index] = new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static long checksum(final FileChannel channel, final long size) throws IOException {
+        final CRC32 crc = new CRC32();
+        for (long position = 0; position < size; position += MAXIMUM_MAPPED_SIZE)
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                   Math.min(MAXIMUM_MAPPED_SIZE, size - position)));
+        return crc.getValue();
+    }
+
+    /**
+     * Size and modification time of a movies file, with its checksum that is only calculated when it is needed.
+     */
+    private static class SourceVersion {
+        private final Path path;
+        private final long size;
+        private final long modifiedMillis;
+        private long checksum;
+        private boolean checksumCalculated;
+
+        private SourceVersion(final Path path) throws IOException {
+            this.path = path;
+            this.size = Files.size(path);
+            this.modifiedMillis = Files.getLastModifiedTime(path).toMillis();
+        }
+
+        /**
+         * Check whether a snapshot belongs to this version of the movies file: the sizes have to be equal, and the
+         * checksums as well unless the modification times are equal.
+         */
+        private boolean matches(final long snapshotSize, final long snapshotModifiedMillis,
+                                final long snapshotChecksum) throws IOException {
+            return snapshotSize == size
+                   && (snapshotModifiedMillis == modifiedMillis || snapshotChecksum == getChecksum());
+        }
+
+        private long getChecksum() throws IOException {
+            if (!checksumCalculated) {
+                checksum = checksum(path);
+                checksumCalculated = true;
+            }
+            return checksum;
+        }
+    }
+}
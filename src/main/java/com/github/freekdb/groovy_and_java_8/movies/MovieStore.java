@@ -0,0 +1,350 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Columnar, dictionary-encoded store with all movies. Instead of a Movie object with a list of Actor objects per
+ * movie, the store keeps:
+ * - an int array with the release year of each movie;
+ * - a title dictionary and the title id of each movie;
+ * - an actor dictionary that maps each actor name to an int id;
+ * - CSR-style (compressed sparse row) cast arrays: the actors of movie m are the actor ids at positions
+ * castOffsets[m] (inclusive) to castOffsets[m + 1] (exclusive) in castActorIds.
+ * <p>
+ * Actor names are stored as "Last, First" (trimmed around the comma), so two names are the same actor exactly when
+ * the Actor objects created by Movie would be equal.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class MovieStore {
+    private static final long MINIMUM_RANGE_SIZE = 1 << 20;
+
+    private final int[] releaseYears;
+    private final int[] titleIds;
+    private final String[] titles;
+    private final String[] actorNames;
+    private final Map<String, Integer> actorIds;
+    private final int[] castOffsets;
+    private final int[] castActorIds;
+
+    MovieStore(final int[] releaseYears, final int[] titleIds, final String[] titles, final String[] actorNames,
+               final int[] castOffsets, final int[] castActorIds) {
+        this.releaseYears = releaseYears;
+        this.titleIds = titleIds;
+        this.titles = titles;
+        this.actorNames = actorNames;
+        this.castOffsets = castOffsets;
+        this.castActorIds = castActorIds;
+        this.actorIds = new HashMap<>(2 * actorNames.length);
+        for (int actorId = 0; actorId < actorNames.length; actorId++)
+            actorIds.put(actorNames[actorId], actorId);
+    }
+
+    /**
+     * Read a movies file into a new store. The file is split into byte ranges that are parsed in parallel, each into
+     * its own builder; the builders are combined in file order, so the ids are the same as when the file is read
+     * sequentially.
+     *
+     * @param filePath the input file path.
+     * @return the store with all movies.
+     * @throws IOException if the file cannot be read.
+     */
+    public static MovieStore read(final Path filePath) throws IOException {
+        try (final FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            final long[] rangeStarts = MovieLineTokenizer.splitIntoRanges(channel, MINIMUM_RANGE_SIZE);
+            return IntStream.range(0, rangeStarts.length - 1).parallel()
+                .collect(Builder::new,
+                         (builder, range) -> builder.addRange(channel, rangeStarts[range], rangeStarts[range + 1]),
+                         Builder::combine)
+                .build();
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public int getMovieCount() {
+        return releaseYears.length;
+    }
+
+    public int getActorCount() {
+        return actorNames.length;
+    }
+
+    /**
+     * Get the number of distinct titles, which is the size of the title dictionary.
+     *
+     * @return the number of distinct titles.
+     */
+    public int getTitleCount() {
+        return titles.length;
+    }
+
+    public int getReleaseYear(final int movieId) {
+        return releaseYears[movieId];
+    }
+
+    public String getTitle(final int movieId) {
+        return titles[titleIds[movieId]];
+    }
+
+    /**
+     * Get the first position in the cast arrays for a movie.
+     *
+     * @param movieId the movie id.
+     * @return the first cast position (inclusive).
+     */
+    public int getCastStart(final int movieId) {
+        return castOffsets[movieId];
+    }
+
+    /**
+     * Get the end position in the cast arrays for a movie.
+     *
+     * @param movieId the movie id.
+     * @return the last cast position (exclusive).
+     */
+    public int getCastEnd(final int movieId) {
+        return castOffsets[movieId + 1];
+    }
+
+    /**
+     * Get the total number of actor appearances, which is the size of the cast arrays.
+     *
+     * @return the number of actor appearances in all movies.
+     */
+    public int getCastSize() {
+        return castActorIds.length;
+    }
+
+    public int getCastActorId(final int castPosition) {
+        return castActorIds[castPosition];
+    }
+
+    /**
+     * Get the id of an actor.
+     *
+     * @param actorName the actor name, formatted as "Last, First".
+     * @return the actor id, or -1 if the actor is unknown.
+     */
+    public int getActorId(final String actorName) {
+        final Integer actorId = actorIds.get(actorName);
+        return actorId != null ? actorId : -1;
+    }
+
+    public String getActorName(final int actorId) {
+        return actorNames[actorId];
+    }
+
+    /**
+     * Get an actor object, which formats the name as "First Last" like the actors of the Movie class.
+     *
+     * @param actorId the actor id.
+     * @return the actor.
+     */
+    public Actor getActor(final int actorId) {
+        final String actorName = actorNames[actorId];
+        final int commaIndex = actorName.indexOf(',');
+        return commaIndex != -1
+               ? new Actor(actorName.substring(commaIndex + 2), actorName.substring(0, commaIndex))
+               : new Actor(actorName, "");
+    }
+
+    /**
+     * Create Movie objects for all movies in the store. All appearances of an actor share the same Actor object.
+     *
+     * @return the movies.
+     */
+    public List<Movie> toMovies() {
+        final Actor[] actors = new Actor[actorNames.length];
+        for (int actorId = 0; actorId < actors.length; actorId++)
+            actors[actorId] = getActor(actorId);
+        final List<Movie> movies = new ArrayList<>(releaseYears.length);
+        for (int movieId = 0; movieId < releaseYears.length; movieId++) {
+            final List<Actor> cast = new ArrayList<>(getCastEnd(movieId) - getCastStart(movieId));
+            for (int castPosition = getCastStart(movieId); castPosition < getCastEnd(movieId); castPosition++)
+                cast.add(actors[castActorIds[castPosition]]);
+            movies.add(new Movie(getTitle(movieId), releaseYears[movieId], cast));
+        }
+        return movies;
+    }
+
+    int[] getReleaseYears() {
+        return releaseYears;
+    }
+
+    int[] getTitleIds() {
+        return titleIds;
+    }
+
+    String[] getTitles() {
+        return titles;
+    }
+
+    String[] getActorNames() {
+        return actorNames;
+    }
+
+    int[] getCastOffsets() {
+        return castOffsets;
+    }
+
+    int[] getCastActorIds() {
+        return castActorIds;
+    }
+
+    /**
+     * Builder that parses movie lines (in the same way as the Movie class) and assigns title and actor ids in order of
+     * first appearance. Titles and actor names are looked up in the dictionaries by their UTF-8 bytes, so a String is
+     * only created for the first appearance of a title or actor.
+     */
+    public static class Builder {
+        private final Utf8Dictionary titles = new Utf8Dictionary();
+        private final Utf8Dictionary actorNames = new Utf8Dictionary();
+        private MovieLineTokenizer tokenizer;
+        private byte[] actorName = new byte[256];
+        private int[] releaseYears = new int[1024];
+        private int[] movieTitleIds = new int[1024];
+        private int[] castOffsets = new int[1025];
+        private int[] castActorIds = new int[16384];
+        private int movieCount;
+        private int castSize;
+
+        public Builder addLine(final String dataLine) {
+            if (tokenizer == null)
+                tokenizer = new MovieLineTokenizer();
+            final byte[] bytes = dataLine.getBytes(StandardCharsets.UTF_8);
+            tokenizer.tokenize(bytes, 0, bytes.length, true);
+            return addLines(tokenizer);
+        }
+
+        /**
+         * Add the lines of a byte range of a file; the range should start at the beginning of a line.
+         *
+         * @param channel the file channel.
+         * @param start   the start of the byte range (inclusive).
+         * @param end     the end of the byte range (exclusive).
+         * @throws UncheckedIOException if the file cannot be read.
+         */
+        void addRange(final FileChannel channel, final long start, final long end) {
+            if (tokenizer == null)
+                tokenizer = new MovieLineTokenizer();
+            try {
+                tokenizer.tokenize(channel, start, end, true, this::addLines);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Add the (non-empty) lines of a tokenized block of bytes.
+         *
+         * @param tokenizer the tokenizer with the current block.
+         * @return this builder.
+         */
+        public Builder addLines(final MovieLineTokenizer tokenizer) {
+            final byte[] bytes = tokenizer.getBytes();
+            for (int line = 0; line < tokenizer.getLineCount(); line++)
+                if (!tokenizer.isEmpty(line)) {
+                    final int titleId = titles.add(bytes, tokenizer.getTitleStart(line), tokenizer.getTitleEnd(line));
+                    final int movieId = startMovie(titleId, tokenizer.getReleaseYear(line));
+                    final int actorCount = tokenizer.findActors(line, false);
+                    for (int actor = 0; actor < actorCount; actor++)
+                        addActor(bytes, tokenizer.getActorStart(actor), tokenizer.getActorEnd(actor));
+                    castOffsets[movieId + 1] = castSize;
+                }
+            return this;
+        }
+
+        /**
+         * Add the movies of another builder after the movies of this builder. The titles and actors of the other
+         * builder get ids in this builder in order of their first appearance there, so combining the builders of
+         * consecutive parts of a file gives the same store as reading the whole file with one builder.
+         *
+         * @param other the other builder.
+         */
+        public void combine(final Builder other) {
+            final int[] titleIdMapping = new int[other.titles.size()];
+            for (int otherTitleId = 0; otherTitleId < titleIdMapping.length; otherTitleId++)
+                titleIdMapping[otherTitleId] = titles.add(other.titles, otherTitleId);
+            final int[] actorIdMapping = new int[other.actorNames.size()];
+            for (int otherActorId = 0; otherActorId < actorIdMapping.length; otherActorId++)
+                actorIdMapping[otherActorId] = actorNames.add(other.actorNames, otherActorId);
+            if (castActorIds.length < castSize + other.castSize)
+                castActorIds = Arrays.copyOf(castActorIds, Math.max(castSize + other.castSize, 2 * castSize));
+            for (int otherMovieId = 0; otherMovieId < other.movieCount; otherMovieId++) {
+                final int movieId = startMovie(titleIdMapping[other.movieTitleIds[otherMovieId]],
+                                               other.releaseYears[otherMovieId]);
+                for (int castPosition = other.castOffsets[otherMovieId];
+                     castPosition < other.castOffsets[otherMovieId + 1]; castPosition++)
+                    castActorIds[castSize++] = actorIdMapping[other.castActorIds[castPosition]];
+                castOffsets[movieId + 1] = castSize;
+            }
+        }
+
+        public MovieStore build() {
+            return new MovieStore(Arrays.copyOf(releaseYears, movieCount), Arrays.copyOf(movieTitleIds, movieCount),
+                                  titles.toArray(), actorNames.toArray(),
+                                  Arrays.copyOf(castOffsets, movieCount + 1), Arrays.copyOf(castActorIds, castSize));
+        }
+
+        private int startMovie(final int titleId, final int releaseYear) {
+            if (movieCount == releaseYears.length) {
+                releaseYears = Arrays.copyOf(releaseYears, 2 * movieCount);
+                movieTitleIds = Arrays.copyOf(movieTitleIds, 2 * movieCount);
+                castOffsets = Arrays.copyOf(castOffsets, 2 * movieCount + 1);
+            }
+            releaseYears[movieCount] = releaseYear;
+            movieTitleIds[movieCount] = titleId;
+            castOffsets[movieCount + 1] = castSize;
+            return movieCount++;
+        }
+
+        /**
+         * Add an actor to the cast of the current movie. A name "Last , First" is normalized to "Last, First" (like
+         * the Actor objects created by Movie) in a reusable buffer before it is looked up.
+         */
+        private void addActor(final byte[] bytes, final int start, final int end) {
+            int commaIndex = start;
+            while (commaIndex < end && bytes[commaIndex] != ',')
+                commaIndex++;
+            final int actorId;
+            if (commaIndex == end)
+                actorId = actorNames.add(bytes, start, end);
+            else {
+                if (actorName.length < end - start + 1)
+                    actorName = new byte[Math.max(end - start + 1, 2 * actorName.length)];
+                int length = appendTrimmed(bytes, start, commaIndex, 0);
+                actorName[length++] = ',';
+                actorName[length++] = ' ';
+                length = appendTrimmed(bytes, commaIndex + 1, end, length);
+                actorId = actorNames.add(actorName, 0, length);
+            }
+            if (castSize == castActorIds.length)
+                castActorIds = Arrays.copyOf(castActorIds, 2 * castSize);
+            castActorIds[castSize++] = actorId;
+        }
+
+        private int appendTrimmed(final byte[] bytes, final int start, final int end, final int length) {
+            // Like String.trim: all characters up to and including the space (UTF-8 multi-byte bytes are above 0x7F).
+            int trimmedStart = start;
+            int trimmedEnd = end;
+            while (trimmedStart < trimmedEnd && (bytes[trimmedStart] & 0xFF) <= ' ')
+                trimmedStart++;
+            while (trimmedEnd > trimmedStart && (bytes[trimmedEnd - 1] & 0xFF) <= ' ')
+                trimmedEnd--;
+            System.arraycopy(bytes, trimmedStart, actorName, length, trimmedEnd - trimmedStart);
+            return length + trimmedEnd - trimmedStart;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for the MovieQueryService on localhost. A number of concurrent clients (on virtual threads when the
+ * Java runtime has them) send a mix of all queries to the service; afterwards the throughput and the client-side p50
+ * and p99 latencies are printed, followed by the metrics of the service itself.
+ * <p>
+ * Without a port, the load generator starts a service in the same JVM on a free port, so a single command measures
+ * the whole round trip:
+ * <pre>
+ * QueryLoadGenerator --clients 64 --requests 20000
+ * QueryLoadGenerator --port 8642 --clients 64 --requests 20000
+ * </pre>
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class QueryLoadGenerator {
+    private static final String LOOPBACK_HOST = InetAddress.getLoopbackAddress().getHostAddress();
+    private static final List<String> REQUESTS = Arrays.asList(
+        "/year-with-most-movies",
+        "/most-active-actor",
+        "/most-active-actor-in-year",
+        "/most-active-actor-in-year?year=1999",
+        "/actor-count?name=Eastwood%2C+Clint",
+        "/actor-count?name=Eastwood%2C+Clint&from=1990&to=1999",
+        "/distinct-count?field=titles",
+        "/distinct-count?field=years",
+        "/distinct-count?field=actors"
+    );
+
+    /**
+     * Main method.
+     *
+     * @param arguments command-line arguments: "--port number" to load a running service (otherwise a service is
+     *                  started in this JVM), "--file path" for the movies file of that service (data/movies-mpaa.txt by
+     *                  default), "--clients count" for the number of concurrent clients (16 by default), and
+     *                  "--requests count" for the total number of requests (2000 by default).
+     */
+    public static void main(final String[] arguments) {
+        final List<String> options = Arrays.asList(arguments);
+        final int portIndex = options.indexOf("--port");
+        final int fileIndex = options.indexOf("--file");
+        final int clientsIndex = options.indexOf("--clients");
+        final int requestsIndex = options.indexOf("--requests");
+        final String filePath = fileIndex != -1 ? options.get(fileIndex + 1) : "data/movies-mpaa.txt";
+        final int clientCount = clientsIndex != -1 ? Integer.parseInt(options.get(clientsIndex + 1)) : 16;
+        final int requestCount = requestsIndex != -1 ? Integer.parseInt(options.get(requestsIndex + 1)) : 2000;
+        try {
+            MovieQueryService service = null;
+            final int port;
+            if (portIndex != -1)
+                port = Integer.parseInt(options.get(portIndex + 1));
+            else {
+                service = new MovieQueryService(MovieSnapshot.loadOrCreate(Paths.get(filePath)));
+                service.start(0);
+                port = service.getPort();
+            }
+            new QueryLoadGenerator().run(port, clientCount, requestCount);
+            if (service != null)
+                service.stop();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Send the requests with concurrent clients and print the results.
+     *
+     * @param port         the port of the service on localhost.
+     * @param clientCount  the number of concurrent clients.
+     * @param requestCount the total number of requests.
+     */
+    private void run(final int port, final int clientCount, final int requestCount) {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final AtomicLong errorCount = new AtomicLong();
+        final List<Callable<Void>> clients = new ArrayList<>();
+        for (int client = 0; client < clientCount; client++) {
+            final int firstRequest = client;
+            clients.add(() -> {
+                for (int request = firstRequest; request < requestCount; request += clientCount) {
+                    final long start = System.nanoTime();
+                    int status;
+                    try {
+                        status = get(port, REQUESTS.get(request % REQUESTS.size()), null);
+                    } catch (final UncheckedIOException e) {
+                        status = -1;
+                    }
+                    latencies.record(System.nanoTime() - start);
+                    if (status != 200)
+                        errorCount.incrementAndGet();
+                }
+                return null;
+            });
+        }
+
+        System.out.println("Sending " + requestCount + " requests with " + clientCount + " clients to port " + port
+                           + " (" + MovieQueryService.getThreadKind() + ")...");
+        final ExecutorService executor = MovieQueryService.newRequestExecutor();
+        final long start = System.nanoTime();
+        try {
+            for (final Future<Void> result : executor.invokeAll(clients))
+                result.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (final ExecutionException e) {
+            e.getCause().printStackTrace();
+        } finally {
+            executor.shutdown();
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("%d requests (%d errors) in %.2f seconds: %.0f requests per second.",
+                                         latencies.getCount(), errorCount.get(), seconds,
+                                         latencies.getCount() / seconds));
+        System.out.println(String.format("Client latency: mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us.",
+                                         latencies.getMeanNanos() / 1e3, latencies.getPercentileNanos(0.5) / 1e3,
+                                         latencies.getPercentileNanos(0.99) / 1e3, latencies.getMaximumNanos() / 1e3));
+        System.out.println();
+        System.out.println("Service metrics:");
+        final StringBuilder metrics = new StringBuilder();
+        get(port, "/metrics", metrics);
+        System.out.print(metrics);
+    }
+
+    /**
+     * Send a GET request to the service and read the whole response.
+     *
+     * @param port     the port of the service on localhost.
+     * @param request  the path and query of the request.
+     * @param response the builder for the response body, or null to discard it.
+     * @return the HTTP status code.
+     * @throws UncheckedIOException if the request fails.
+     */
+    private static int get(final int port, final String request, final StringBuilder response) {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL("http", LOOPBACK_HOST, port, request)
+                .openConnection();
+            final int status = connection.getResponseCode();
+            try (final InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[8192];
+                for (int byteCount; body != null && (byteCount = body.read(buffer)) != -1; )
+                    bytes.write(buffer, 0, byteCount);
+                if (response != null)
+                    response.append(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+            }
+            return status;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
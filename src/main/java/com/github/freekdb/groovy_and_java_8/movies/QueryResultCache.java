@@ -0,0 +1,312 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed cache for query results. A result is stored under the SHA-256 fingerprint of the input file
+ * together with a query identifier, so it is reused for as long as the file content is the same, and a changed file
+ * gets new keys (the old results age out).
+ * <p>
+ * Hashing a large file takes much longer than most queries, so the fingerprint of a file is memoized by its path, size,
+ * and modification time, in memory and (with a disk tier) in a small file in the cache directory; an unchanged file
+ * is only checked with two file attribute lookups. A file that is rewritten with the same size within the resolution
+ * of the modification time is not noticed.
+ * <p>
+ * The results are kept in an in-memory LRU tier and optionally in a disk tier: a directory with one file per result,
+ * named after the SHA-256 of the key. When the disk tier grows beyond its maximum size, the least recently used results
+ * (by modification time, which is updated on every disk hit) are deleted. Disk errors are reported and treated as cache
+ * misses.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class QueryResultCache {
+    private static final String RESULT_EXTENSION = ".result";
+    private static final String FINGERPRINT_PREFIX = "fingerprint-";
+    private static final int MAXIMUM_MAPPED_SIZE = 1 << 30;
+
+    private final Map<String, String> memoryTier;
+    private final Path diskDirectory;
+    private final long maximumDiskSize;
+    private final Map<Path, FileFingerprint> fingerprints = new HashMap<>();
+    private long memoryHitCount;
+    private long diskHitCount;
+    private long missCount;
+
+    /**
+     * Create a cache with only an in-memory tier.
+     *
+     * @param maximumMemoryEntries the maximum number of results in memory.
+     */
+    public QueryResultCache(final int maximumMemoryEntries) {
+        this(maximumMemoryEntries, null, 0);
+    }
+
+    /**
+     * Create a cache with an in-memory tier and a disk tier.
+     *
+     * @param maximumMemoryEntries the maximum number of results in memory.
+     * @param diskDirectory        the directory for the disk tier, or null for no disk tier.
+     * @param maximumDiskSize      the maximum total size of the results on disk in bytes.
+     */
+    public QueryResultCache(final int maximumMemoryEntries, final Path diskDirectory, final long maximumDiskSize) {
+        this.memoryTier = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+                return size() > maximumMemoryEntries;
+            }
+        };
+        this.diskDirectory = diskDirectory;
+        this.maximumDiskSize = maximumDiskSize;
+    }
+
+    /**
+     * Get the cache directory that belongs to an input file: the file path with ".query-cache" appended.
+     *
+     * @param sourcePath the input file path.
+     * @return the cache directory path.
+     */
+    public static Path getCacheDirectory(final Path sourcePath) {
+        return Paths.get(sourcePath.toString() + ".query-cache");
+    }
+
+    /**
+     * Get the fingerprint of a file: the SHA-256 hash of its content, which is only recalculated when the size or the
+     * modification time of the file has changed.
+     *
+     * @param filePath the file path.
+     * @return the fingerprint as a hexadecimal string.
+     * @throws IOException if the file cannot be read.
+     */
+    public synchronized String fingerprint(final Path filePath) throws IOException {
+        final Path absolutePath = filePath.toAbsolutePath();
+        final long size = Files.size(absolutePath);
+        final long modifiedMillis = Files.getLastModifiedTime(absolutePath).toMillis();
+        FileFingerprint fingerprint = fingerprints.get(absolutePath);
+        if (fingerprint == null || !fingerprint.matches(size, modifiedMillis)) {
+            fingerprint = readFingerprint(absolutePath);
+            if (fingerprint == null || !fingerprint.matches(size, modifiedMillis)) {
+                fingerprint = new FileFingerprint(size, modifiedMillis, toHex(sha256(absolutePath)));
+                writeFingerprint(absolutePath, fingerprint);
+            }
+            fingerprints.put(absolutePath, fingerprint);
+        }
+        return fingerprint.digest;
+    }
+
+    /**
+     * Get the result of a query from the cache, or run the query and store its result.
+     *
+     * @param fingerprint the fingerprint of the input file (see fingerprint).
+     * @param queryId     the query identifier.
+     * @param query       the query, which is only called on a cache miss.
+     * @return the query result.
+     */
+    public String get(final String fingerprint, final String queryId, final Supplier<String> query) {
+        final String key = fingerprint + "/" + queryId;
+        synchronized (this) {
+            final String memoryResult = memoryTier.get(key);
+            if (memoryResult != null) {
+                memoryHitCount++;
+                return memoryResult;
+            }
+        }
+        final String diskResult = readResult(key);
+        if (diskResult != null) {
+            synchronized (this) {
+                diskHitCount++;
+                memoryTier.put(key, diskResult);
+            }
+            return diskResult;
+        }
+        final String result = query.get();
+        synchronized (this) {
+            missCount++;
+            memoryTier.put(key, result);
+        }
+        writeResult(key, result);
+        return result;
+    }
+
+    public synchronized long getMemoryHitCount() {
+        return memoryHitCount;
+    }
+
+    public synchronized long getDiskHitCount() {
+        return diskHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "QueryResultCache{memory hits: " + memoryHitCount + ", disk hits: " + diskHitCount + ", misses: "
+               + missCount + "}";
+    }
+
+    private String readResult(final String key) {
+        if (diskDirectory == null)
+            return null;
+        final Path resultPath = getResultPath(key);
+        try {
+            final String result = new String(Files.readAllBytes(resultPath), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(resultPath, FileTime.fromMillis(System.currentTimeMillis()));
+            return result;
+        } catch (final NoSuchFileException e) {
+            return null;
+        } catch (final IOException e) {
+            System.out.println("Cached result " + resultPath + " cannot be read (" + e.getMessage() + ").");
+            return null;
+        }
+    }
+
+    private void writeResult(final String key, final String result) {
+        if (diskDirectory == null)
+            return;
+        final Path resultPath = getResultPath(key);
+        try {
+            writeAtomically(resultPath, result.getBytes(StandardCharsets.UTF_8));
+            evictFromDisk();
+        } catch (final IOException e) {
+            System.out.println("Cached result " + resultPath + " cannot be written (" + e.getMessage() + ").");
+        }
+    }
+
+    /**
+     * Delete the least recently used results until the results on disk fit in the maximum disk size.
+     *
+     * @throws IOException if the cache directory cannot be listed.
+     */
+    private void evictFromDisk() throws IOException {
+        final List<Path> resultPaths = new ArrayList<>();
+        long totalSize = 0;
+        try (final DirectoryStream<Path> paths = Files.newDirectoryStream(diskDirectory, "*" + RESULT_EXTENSION)) {
+            for (final Path path : paths) {
+                resultPaths.add(path);
+                totalSize += Files.size(path);
+            }
+        }
+        if (totalSize <= maximumDiskSize)
+            return;
+        final Map<Path, Long> modifiedMillis = new HashMap<>();
+        for (final Path path : resultPaths)
+            modifiedMillis.put(path, Files.getLastModifiedTime(path).toMillis());
+        resultPaths.sort((path1, path2) -> Long.compare(modifiedMillis.get(path1), modifiedMillis.get(path2)));
+        for (int index = 0; index < resultPaths.size() && totalSize > maximumDiskSize; index++) {
+            totalSize -= Files.size(resultPaths.get(index));
+            Files.deleteIfExists(resultPaths.get(index));
+        }
+    }
+
+    private FileFingerprint readFingerprint(final Path filePath) {
+        if (diskDirectory == null)
+            return null;
+        try {
+            final String[] fields = new String(Files.readAllBytes(getFingerprintPath(filePath)),
+                                               StandardCharsets.UTF_8).trim().split(" ");
+            return fields.length == 3
+                   ? new FileFingerprint(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2])
+                   : null;
+        } catch (final IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void writeFingerprint(final Path filePath, final FileFingerprint fingerprint) {
+        if (diskDirectory == null)
+            return;
+        final Path fingerprintPath = getFingerprintPath(filePath);
+        try {
+            writeAtomically(fingerprintPath, (fingerprint.size + " " + fingerprint.modifiedMillis + " "
+                                              + fingerprint.digest).getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException e) {
+            System.out.println("Fingerprint " + fingerprintPath + " cannot be written (" + e.getMessage() + ").");
+        }
+    }
+
+    private void writeAtomically(final Path path, final byte[] bytes) throws IOException {
+        Files.createDirectories(diskDirectory);
+        final Path temporaryPath = Files.createTempFile(diskDirectory, path.getFileName().toString(), ".tmp");
+        Files.write(temporaryPath, bytes);
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path getResultPath(final String key) {
+        return diskDirectory.resolve(toHex(sha256(key.getBytes(StandardCharsets.UTF_8))) + RESULT_EXTENSION);
+    }
+
+    private Path getFingerprintPath(final Path filePath) {
+        return diskDirectory.resolve(FINGERPRINT_PREFIX
+                                     + toHex(sha256(filePath.toString().getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private static byte[] sha256(final byte[] bytes) {
+        final MessageDigest digest = createDigest();
+        return digest.digest(bytes);
+    }
+
+    private static byte[] sha256(final Path filePath) throws IOException {
+        final MessageDigest digest = createDigest();
+        try (final FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            for (long position = 0; position < size; position += MAXIMUM_MAPPED_SIZE)
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                          Math.min(MAXIMUM_MAPPED_SIZE, size - position)));
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (final byte value : bytes)
+            hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+        return hex.toString();
+    }
+
+    /**
+     * Fingerprint of a file together with the size and modification time for which it was calculated.
+     */
+    private static class FileFingerprint {
+        private final long size;
+        private final long modifiedMillis;
+        private final String digest;
+
+        private FileFingerprint(final long size, final long modifiedMillis, final String digest) {
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.digest = digest;
+        }
+
+        private boolean matches(final long otherSize, final long otherModifiedMillis) {
+            return size == otherSize && modifiedMillis == otherModifiedMillis;
+        }
+    }
+}
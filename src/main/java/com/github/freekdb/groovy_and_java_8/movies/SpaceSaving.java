@@ -0,0 +1,257 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Space-Saving summary (Metwally, Agrawal, and El Abbadi) that finds the most frequent keys of a stream in fixed
+ * memory. At most capacity keys are monitored; a new key replaces the monitored key with the lowest count and inherits
+ * that count as its error. Each estimated count is at least the true count and at most the true count plus its error,
+ * and the error is at most totalCount / capacity. Summaries can be merged (Agarwal et al., "Mergeable Summaries"), so
+ * partial summaries of several threads can be combined.
+ *
+ * @param <K> the key type.
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class SpaceSaving<K> {
+    private final int capacity;
+    private final Map<K, Counter<K>> counters;
+    private final Counter<K>[] heap;
+    private int size;
+    private long totalCount;
+
+    /**
+     * Create a summary.
+     *
+     * @param capacity the maximum number of monitored keys.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SpaceSaving(final int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity should be at least one: " + capacity);
+        this.capacity = capacity;
+        this.counters = new HashMap<>(2 * capacity);
+        this.heap = (Counter<K>[]) new Counter[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Get the maximum error of the estimated counts: the lowest monitored count once all counters are in use.
+     *
+     * @return the maximum error, which is at most getTotalCount() / getCapacity().
+     */
+    public long getMaximumError() {
+        return size == capacity ? heap[0].count : 0;
+    }
+
+    /**
+     * Count a key.
+     *
+     * @param key the key.
+     * @return the key that is no longer monitored because the new key replaced it, or null if no key was replaced.
+     */
+    public K add(final K key) {
+        totalCount++;
+        final Counter<K> counter = counters.get(key);
+        if (counter != null) {
+            counter.count++;
+            siftDown(counter.heapIndex);
+        } else if (size < capacity) {
+            final Counter<K> newCounter = new Counter<>(key, 1, 0);
+            counters.put(key, newCounter);
+            newCounter.heapIndex = size;
+            heap[size++] = newCounter;
+            siftUp(newCounter.heapIndex);
+        } else {
+            final Counter<K> minimum = heap[0];
+            final K replacedKey = minimum.key;
+            counters.remove(replacedKey);
+            minimum.key = key;
+            minimum.error = minimum.count;
+            minimum.count++;
+            counters.put(key, minimum);
+            siftDown(0);
+            return replacedKey;
+        }
+        return null;
+    }
+
+    public boolean contains(final K key) {
+        return counters.containsKey(key);
+    }
+
+    /**
+     * Merge another summary into this summary. A key that is missing from one of the summaries is counted with the
+     * maximum error of that summary; of the combined keys, the capacity keys with the highest counts are kept.
+     *
+     * @param other the other summary.
+     */
+    public void combine(final SpaceSaving<K> other) {
+        final long thisMinimum = getMaximumError();
+        final long otherMinimum = other.getMaximumError();
+        final List<Counter<K>> merged = new ArrayList<>(size + other.size);
+        for (int index = 0; index < size; index++) {
+            final Counter<K> counter = heap[index];
+            final Counter<K> otherCounter = other.counters.get(counter.key);
+            merged.add(otherCounter != null
+                       ? new Counter<>(counter.key, counter.count + otherCounter.count,
+                                       counter.error + otherCounter.error)
+                       : new Counter<>(counter.key, counter.count + otherMinimum, counter.error + otherMinimum));
+        }
+        for (int index = 0; index < other.size; index++) {
+            final Counter<K> otherCounter = other.heap[index];
+            if (!counters.containsKey(otherCounter.key))
+                merged.add(new Counter<>(otherCounter.key, otherCounter.count + thisMinimum,
+                                         otherCounter.error + thisMinimum));
+        }
+        merged.sort(Comparator.comparingLong((Counter<K> counter) -> counter.count).reversed());
+
+        counters.clear();
+        Arrays.fill(heap, null);
+        size = 0;
+        for (final Counter<K> counter : merged.subList(0, Math.min(capacity, merged.size()))) {
+            counters.put(counter.key, counter);
+            counter.heapIndex = size;
+            heap[size++] = counter;
+            siftUp(counter.heapIndex);
+        }
+        totalCount += other.totalCount;
+    }
+
+    /**
+     * Create a copy of this summary in which every monitored key is replaced, for example to translate ids between
+     * dictionaries before summaries are combined. Different keys should be mapped to different keys.
+     *
+     * @param keyMapping the function that maps the keys of this summary to the new keys.
+     * @param <L>        the new key type.
+     * @return the summary with the new keys and the same counts and errors.
+     */
+    public <L> SpaceSaving<L> mapKeys(final Function<? super K, ? extends L> keyMapping) {
+        final SpaceSaving<L> mapped = new SpaceSaving<>(capacity);
+        for (int index = 0; index < size; index++) {
+            final Counter<L> counter = new Counter<>(keyMapping.apply(heap[index].key), heap[index].count,
+                                                     heap[index].error);
+            counter.heapIndex = index;
+            mapped.heap[index] = counter;
+            mapped.counters.put(counter.key, counter);
+        }
+        mapped.size = size;
+        mapped.totalCount = totalCount;
+        return mapped;
+    }
+
+    /**
+     * Get the monitored keys with the highest estimated counts.
+     *
+     * @param k the maximum number of keys.
+     * @return the estimates, ordered by descending count and then by key (as a string).
+     */
+    public List<Estimate<K>> getTop(final int k) {
+        final List<Estimate<K>> estimates = new ArrayList<>(size);
+        for (int index = 0; index < size; index++)
+            estimates.add(new Estimate<>(heap[index].key, heap[index].count, heap[index].error));
+        estimates.sort(Comparator.comparingLong((Estimate<K> estimate) -> estimate.count).reversed()
+                           .thenComparing(estimate -> String.valueOf(estimate.key)));
+        return new ArrayList<>(estimates.subList(0, Math.min(k, estimates.size())));
+    }
+
+    private void siftUp(final int startIndex) {
+        int index = startIndex;
+        while (index > 0) {
+            final int parentIndex = (index - 1) / 2;
+            if (heap[parentIndex].count <= heap[index].count)
+                break;
+            swap(index, parentIndex);
+            index = parentIndex;
+        }
+    }
+
+    private void siftDown(final int startIndex) {
+        int index = startIndex;
+        while (2 * index + 1 < size) {
+            int childIndex = 2 * index + 1;
+            if (childIndex + 1 < size && heap[childIndex + 1].count < heap[childIndex].count)
+                childIndex++;
+            if (heap[index].count <= heap[childIndex].count)
+                break;
+            swap(index, childIndex);
+            index = childIndex;
+        }
+    }
+
+    private void swap(final int index1, final int index2) {
+        final Counter<K> counter = heap[index1];
+        heap[index1] = heap[index2];
+        heap[index2] = counter;
+        heap[index1].heapIndex = index1;
+        heap[index2].heapIndex = index2;
+    }
+
+    /**
+     * Monitored key with its count, its error, and its position in the min-heap.
+     *
+     * @param <K> the key type.
+     */
+    private static class Counter<K> {
+        private K key;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        Counter(final K key, final long count, final long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Estimated count of a key: the true count is between getGuaranteedCount() and getCount().
+     *
+     * @param <K> the key type.
+     */
+    public static class Estimate<K> {
+        private final K key;
+        private final long count;
+        private final long error;
+
+        public Estimate(final K key, final long count, final long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        public long getGuaranteedCount() {
+            return count - error;
+        }
+
+        @Override
+        public String toString() {
+            return key + ": " + (error == 0 ? String.valueOf(count) : (count - error) + ".." + count);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Dictionary of strings that are looked up by their raw UTF-8 bytes, so the bytes of an input block can be hashed and
+ * compared without creating a String first. Each distinct byte sequence gets an int id in order of first appearance;
+ * the bytes are copied into one shared array and the String of an entry is only created (once) when it is requested.
+ * <p>
+ * The hash table uses open addressing with linear probing. Each slot has two longs: the hash with the id, and the
+ * offset with the length of the bytes. A lookup therefore touches one slot and the stored bytes, which matters when
+ * the dictionary is much larger than the CPU caches.
+ * <p>
+ * UTF-8 is compared byte by byte, which is the same as comparing the decoded strings for valid UTF-8 (multi-byte
+ * characters like the 'ç' in "Françoise" have exactly one encoding).
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class Utf8Dictionary {
+    private static final int NOT_FOUND = -1;
+
+    private byte[] bytes = new byte[1 << 12];
+    private int byteCount;
+    private int[] offsets = new int[257];
+    private String[] strings = new String[256];
+    private int size;
+    private int capacity = 512;
+    private long[] slots = new long[2 * capacity];
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the id of a byte sequence, adding it to the dictionary when it is new.
+     *
+     * @param source the bytes.
+     * @param start  the start of the sequence (inclusive).
+     * @param end    the end of the sequence (exclusive).
+     * @return the id.
+     */
+    public int add(final byte[] source, final int start, final int end) {
+        final int hash = hash(source, start, end);
+        final int slot = findSlot(hash, source, start, end);
+        if (slots[2 * slot] != 0)
+            return getId(slot);
+        final int id = append(source, start, end);
+        setSlot(slot, hash, id);
+        if (2 * size > capacity)
+            rehash(2 * capacity);
+        return id;
+    }
+
+    /**
+     * Get the id of an entry of another dictionary, adding it to this dictionary when it is new.
+     *
+     * @param other   the other dictionary.
+     * @param otherId the id of the entry in the other dictionary.
+     * @return the id in this dictionary.
+     */
+    public int add(final Utf8Dictionary other, final int otherId) {
+        return add(other.bytes, other.offsets[otherId], other.offsets[otherId + 1]);
+    }
+
+    /**
+     * Get the id of a byte sequence without adding it.
+     *
+     * @param source the bytes.
+     * @param start  the start of the sequence (inclusive).
+     * @param end    the end of the sequence (exclusive).
+     * @return the id, or -1 if the sequence is not in the dictionary.
+     */
+    public int find(final byte[] source, final int start, final int end) {
+        final int slot = findSlot(hash(source, start, end), source, start, end);
+        return slots[2 * slot] != 0 ? getId(slot) : NOT_FOUND;
+    }
+
+    /**
+     * Get the string of an entry, which is decoded the first time it is requested.
+     *
+     * @param id the id.
+     * @return the string.
+     */
+    public String get(final int id) {
+        String string = strings[id];
+        if (string == null) {
+            string = new String(bytes, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+            strings[id] = string;
+        }
+        return string;
+    }
+
+    /**
+     * Get the strings of all entries.
+     *
+     * @return the strings, indexed by id.
+     */
+    public String[] toArray() {
+        final String[] allStrings = new String[size];
+        for (int id = 0; id < size; id++)
+            allStrings[id] = get(id);
+        return allStrings;
+    }
+
+    private static int hash(final byte[] source, final int start, final int end) {
+        int hash = 0;
+        for (int index = start; index < end; index++)
+            hash = 31 * hash + source[index];
+        // Spread the bits (the finalization step of MurmurHash3), since the table uses the low bits.
+        hash = (hash ^ (hash >>> 16)) * 0x85EBCA6B;
+        hash = (hash ^ (hash >>> 13)) * 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Find the slot of a byte sequence: the slot that contains it, or the empty slot where it should be added.
+     */
+    private int findSlot(final int hash, final byte[] source, final int start, final int end) {
+        final int mask = capacity - 1;
+        final int length = end - start;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final long idEntry = slots[2 * slot];
+            if (idEntry == 0)
+                return slot;
+            if ((int) (idEntry >>> 32) == hash) {
+                final long bytesEntry = slots[2 * slot + 1];
+                if ((int) bytesEntry == length && equals((int) (bytesEntry >>> 32), source, start, length))
+                    return slot;
+            }
+        }
+    }
+
+    private boolean equals(final int offset, final byte[] source, final int start, final int length) {
+        for (int index = 0; index < length; index++)
+            if (bytes[offset + index] != source[start + index])
+                return false;
+        return true;
+    }
+
+    private int getId(final int slot) {
+        // The id is stored plus one, so an empty slot is zero.
+        return (int) slots[2 * slot] - 1;
+    }
+
+    private void setSlot(final int slot, final int hash, final int id) {
+        slots[2 * slot] = ((long) hash << 32) | (id + 1);
+        slots[2 * slot + 1] = ((long) offsets[id] << 32) | (offsets[id + 1] - offsets[id]);
+    }
+
+    private int append(final byte[] source, final int start, final int end) {
+        final int length = end - start;
+        if (byteCount + length > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(byteCount + length, 2 * bytes.length));
+        if (size == strings.length) {
+            offsets = Arrays.copyOf(offsets, 2 * size + 1);
+            strings = Arrays.copyOf(strings, 2 * size);
+        }
+        System.arraycopy(source, start, bytes, byteCount, length);
+        byteCount += length;
+        offsets[size + 1] = byteCount;
+        return size++;
+    }
+
+    private void rehash(final int newCapacity) {
+        final long[] oldSlots = slots;
+        capacity = newCapacity;
+        slots = new long[2 * newCapacity];
+        final int mask = newCapacity - 1;
+        for (int oldSlot = 0; oldSlot < oldSlots.length; oldSlot += 2)
+            if (oldSlots[oldSlot] != 0) {
+                int slot = (int) (oldSlots[oldSlot] >>> 32) & mask;
+                while (slots[2 * slot] != 0)
+                    slot = (slot + 1) & mask;
+                slots[2 * slot] = oldSlots[oldSlot];
+                slots[2 * slot + 1] = oldSlots[oldSlot + 1];
+            }
+    }
+}
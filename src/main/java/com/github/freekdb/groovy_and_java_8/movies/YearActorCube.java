@@ -0,0 +1,345 @@
+package com.github.freekdb.groovy_and_java_8.movies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Pre-aggregated year by actor cube with the number of movies of every actor in every year, built once from a movie
+ * store, for ad-hoc range and group-by queries that do not scan the movies. As in the queries of JavaMovieQueries, the
+ * movie count of an actor is the number of cast entries (an actor that is listed twice for a movie counts twice).
+ * <p>
+ * The cube is sparse and stored per actor in compressed sparse row form: the years in which an actor played, sorted,
+ * with the running total of the movie counts along the year axis (one running total over all entries, so the count of
+ * a cell is the difference of two neighbouring totals). The count of an actor in a year range is the difference of two
+ * running totals, found with binary searches. The movie counts per year are kept as prefix sums as well. For the most
+ * active actors in a year range, every year also has its actors sorted by movie count; these lists are merged with the
+ * threshold algorithm, which stops as soon as no unseen actor can beat the current top list.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class YearActorCube {
+    private final MovieStore store;
+    private final int firstYear;
+    private final int yearCount;
+    private final int[] movieTotals;
+    private final int[] actorOffsets;
+    private final int[] entryYearIndexes;
+    private final int[] entryTotals;
+    private final int[] yearOffsets;
+    private final long[] yearEntries;
+
+    /**
+     * Build the cube for all movies and actors in a store.
+     *
+     * @param store the movie store.
+     */
+    public YearActorCube(final MovieStore store) {
+        this.store = store;
+        final int movieCount = store.getMovieCount();
+        final int actorCount = store.getActorCount();
+        int minimumYear = movieCount > 0 ? Integer.MAX_VALUE : 0;
+        int maximumYear = movieCount > 0 ? Integer.MIN_VALUE : -1;
+        for (int movieId = 0; movieId < movieCount; movieId++) {
+            minimumYear = Math.min(minimumYear, store.getReleaseYear(movieId));
+            maximumYear = Math.max(maximumYear, store.getReleaseYear(movieId));
+        }
+        firstYear = minimumYear;
+        yearCount = maximumYear - minimumYear + 1;
+
+        // The movies in order of release year (a counting sort), with the running totals per year.
+        movieTotals = new int[yearCount + 1];
+        for (int movieId = 0; movieId < movieCount; movieId++)
+            movieTotals[store.getReleaseYear(movieId) - firstYear + 1]++;
+        for (int yearIndex = 0; yearIndex < yearCount; yearIndex++)
+            movieTotals[yearIndex + 1] += movieTotals[yearIndex];
+        final int[] moviesByYear = new int[movieCount];
+        final int[] nextPositions = Arrays.copyOf(movieTotals, yearCount);
+        for (int movieId = 0; movieId < movieCount; movieId++)
+            moviesByYear[nextPositions[store.getReleaseYear(movieId) - firstYear]++] = movieId;
+
+        // First pass over the movies in year order: the number of distinct years per actor.
+        final int[] previousYearIndexes = new int[actorCount];
+        Arrays.fill(previousYearIndexes, -1);
+        actorOffsets = new int[actorCount + 1];
+        for (final int movieId : moviesByYear)
+            for (int castPosition = store.getCastStart(movieId); castPosition < store.getCastEnd(movieId);
+                 castPosition++) {
+                final int actorId = store.getCastActorId(castPosition);
+                final int yearIndex = store.getReleaseYear(movieId) - firstYear;
+                if (previousYearIndexes[actorId] != yearIndex) {
+                    actorOffsets[actorId + 1]++;
+                    previousYearIndexes[actorId] = yearIndex;
+                }
+            }
+        for (int actorId = 0; actorId < actorCount; actorId++)
+            actorOffsets[actorId + 1] += actorOffsets[actorId];
+
+        // Second pass: the years of every actor (in increasing order) and the movie counts, which are then turned into
+        // running totals: entryTotals[entry] is the total of all entries before the entry.
+        final int entryCount = actorOffsets[actorCount];
+        entryYearIndexes = new int[entryCount];
+        entryTotals = new int[entryCount + 1];
+        final int[] writePositions = Arrays.copyOf(actorOffsets, actorCount);
+        Arrays.fill(previousYearIndexes, -1);
+        for (final int movieId : moviesByYear)
+            for (int castPosition = store.getCastStart(movieId); castPosition < store.getCastEnd(movieId);
+                 castPosition++) {
+                final int actorId = store.getCastActorId(castPosition);
+                final int yearIndex = store.getReleaseYear(movieId) - firstYear;
+                if (previousYearIndexes[actorId] != yearIndex) {
+                    entryYearIndexes[writePositions[actorId]++] = yearIndex;
+                    previousYearIndexes[actorId] = yearIndex;
+                }
+                entryTotals[writePositions[actorId]]++;
+            }
+        for (int entry = 0; entry < entryCount; entry++)
+            entryTotals[entry + 1] += entryTotals[entry];
+
+        // The actors of every year, sorted by movie count: count and inverted actor id packed in a long, so an
+        // ascending sort puts the highest count (and for equal counts the lowest actor id) at the end of the year.
+        yearOffsets = new int[yearCount + 1];
+        for (int entry = 0; entry < entryCount; entry++)
+            yearOffsets[entryYearIndexes[entry] + 1]++;
+        for (int yearIndex = 0; yearIndex < yearCount; yearIndex++)
+            yearOffsets[yearIndex + 1] += yearOffsets[yearIndex];
+        yearEntries = new long[entryCount];
+        final int[] yearWritePositions = Arrays.copyOf(yearOffsets, yearCount);
+        for (int actorId = 0; actorId < actorCount; actorId++)
+            for (int entry = actorOffsets[actorId]; entry < actorOffsets[actorId + 1]; entry++)
+                yearEntries[yearWritePositions[entryYearIndexes[entry]]++] = packActorCount(actorId,
+                                                                                            getEntryCount(entry));
+        for (int yearIndex = 0; yearIndex < yearCount; yearIndex++)
+            Arrays.sort(yearEntries, yearOffsets[yearIndex], yearOffsets[yearIndex + 1]);
+    }
+
+    public MovieStore getStore() {
+        return store;
+    }
+
+    public int getFirstYear() {
+        return firstYear;
+    }
+
+    public int getLastYear() {
+        return firstYear + yearCount - 1;
+    }
+
+    /**
+     * Get the number of non-zero cells in the cube.
+     *
+     * @return the number of (actor, year) combinations with at least one movie.
+     */
+    public int getEntryCount() {
+        return entryYearIndexes.length;
+    }
+
+    /**
+     * Count the movies that were released in a range of years.
+     *
+     * @param fromYear the first year of the range (inclusive).
+     * @param toYear   the last year of the range (inclusive).
+     * @return the number of movies.
+     */
+    public int countMovies(final int fromYear, final int toYear) {
+        final int fromIndex = clampYearIndex(fromYear);
+        final int toIndex = clampYearIndex(toYear + 1);
+        return fromIndex < toIndex ? movieTotals[toIndex] - movieTotals[fromIndex] : 0;
+    }
+
+    /**
+     * Count the movies of an actor in a range of years.
+     *
+     * @param actorId  the actor id.
+     * @param fromYear the first year of the range (inclusive).
+     * @param toYear   the last year of the range (inclusive).
+     * @return the movie count.
+     */
+    public int countActorMovies(final int actorId, final int fromYear, final int toYear) {
+        final int fromIndex = clampYearIndex(fromYear);
+        final int toIndex = clampYearIndex(toYear + 1);
+        return fromIndex < toIndex
+               ? entryTotals[findEntry(actorId, toIndex)] - entryTotals[findEntry(actorId, fromIndex)]
+               : 0;
+    }
+
+    /**
+     * Count the movies of an actor in a range of years.
+     *
+     * @param actorName the actor name, formatted as "Last, First".
+     * @param fromYear  the first year of the range (inclusive).
+     * @param toYear    the last year of the range (inclusive).
+     * @return the movie count (zero for an unknown actor).
+     */
+    public int countActorMovies(final String actorName, final int fromYear, final int toYear) {
+        final int actorId = store.getActorId(actorName);
+        return actorId != -1 ? countActorMovies(actorId, fromYear, toYear) : 0;
+    }
+
+    /**
+     * Count the movies per year of a group of actors, in a range of years. Only the years in which the actors played
+     * are visited.
+     *
+     * @param actorIds the actor ids.
+     * @param fromYear the first year of the range (inclusive).
+     * @param toYear   the last year of the range (inclusive).
+     * @return the summed movie counts, one per year from fromYear to toYear.
+     */
+    public int[] countMoviesPerYear(final int[] actorIds, final int fromYear, final int toYear) {
+        final int[] movieCounts = new int[Math.max(0, toYear - fromYear + 1)];
+        final int fromIndex = clampYearIndex(fromYear);
+        final int toIndex = clampYearIndex(toYear + 1);
+        for (final int actorId : actorIds)
+            for (int entry = findEntry(actorId, fromIndex); entry < actorOffsets[actorId + 1]
+                                                            && entryYearIndexes[entry] < toIndex; entry++)
+                movieCounts[firstYear + entryYearIndexes[entry] - fromYear] += getEntryCount(entry);
+        return movieCounts;
+    }
+
+    /**
+     * Find the busiest period of a number of years, with the periods aligned to multiples of the period length (for
+     * example decades from 1990 to 1999).
+     *
+     * @param periodLength the number of years per period.
+     * @return the first year of the period with the most movies.
+     */
+    public int getBusiestPeriod(final int periodLength) {
+        final int lastYear = getLastYear();
+        int busiestStart = Math.floorDiv(firstYear, periodLength) * periodLength;
+        int busiestCount = -1;
+        for (int periodStart = busiestStart; periodStart <= lastYear; periodStart += periodLength) {
+            final int movieCount = countMovies(periodStart, periodStart + periodLength - 1);
+            if (movieCount > busiestCount) {
+                busiestCount = movieCount;
+                busiestStart = periodStart;
+            }
+        }
+        return busiestStart;
+    }
+
+    /**
+     * Get the most active actors in a range of years. The actor lists of the years are read from the highest count
+     * downwards, in parallel, and every actor that is seen is counted exactly for the whole range. The search stops
+     * when the sum of the current counts of all years (the highest possible total of an actor that was not seen yet)
+     * is lower than the lowest total in the top list, so usually only the top of each year is read. On an equal total
+     * the search goes on, since an actor that was not seen yet could have a lower actor id.
+     *
+     * @param fromYear the first year of the range (inclusive).
+     * @param toYear   the last year of the range (inclusive).
+     * @param topCount the maximum number of actors.
+     * @return the most active actors, with the highest movie count first (equal counts in order of actor id).
+     */
+    public List<ActorCount> getMostActiveActors(final int fromYear, final int toYear, final int topCount) {
+        final int fromIndex = clampYearIndex(fromYear);
+        final int toIndex = clampYearIndex(toYear + 1);
+        // The lowest actor in the top list is at the head of this queue.
+        final PriorityQueue<Long> topActors = new PriorityQueue<>();
+        final Set<Integer> seenActorIds = new HashSet<>();
+        final int[] cursors = new int[Math.max(0, toIndex - fromIndex)];
+        for (int yearIndex = fromIndex; yearIndex < toIndex; yearIndex++)
+            cursors[yearIndex - fromIndex] = yearOffsets[yearIndex + 1];
+        boolean more = topCount > 0;
+        while (more) {
+            long threshold = 0;
+            more = false;
+            for (int yearIndex = fromIndex; yearIndex < toIndex; yearIndex++) {
+                final int cursorIndex = yearIndex - fromIndex;
+                if (cursors[cursorIndex] > yearOffsets[yearIndex]) {
+                    final long yearEntry = yearEntries[--cursors[cursorIndex]];
+                    final int actorId = unpackActorId(yearEntry);
+                    threshold += unpackCount(yearEntry);
+                    more = true;
+                    if (seenActorIds.add(actorId)) {
+                        topActors.add(packActorCount(actorId, countActorMovies(actorId, fromYear, toYear)));
+                        if (topActors.size() > topCount)
+                            topActors.poll();
+                    }
+                }
+            }
+            if (topActors.size() == topCount && unpackCount(topActors.peek()) > threshold)
+                more = false;
+        }
+        final List<ActorCount> mostActive = new ArrayList<>();
+        while (!topActors.isEmpty()) {
+            final long actorCount = topActors.poll();
+            mostActive.add(0, new ActorCount(store.getActorName(unpackActorId(actorCount)), unpackActorId(actorCount),
+                                             unpackCount(actorCount)));
+        }
+        return mostActive;
+    }
+
+    private int clampYearIndex(final int year) {
+        return Math.max(0, Math.min(yearCount, year - firstYear));
+    }
+
+    private int getEntryCount(final int entry) {
+        return entryTotals[entry + 1] - entryTotals[entry];
+    }
+
+    /**
+     * Find the first entry of an actor in or after a year, with a binary search.
+     *
+     * @param actorId   the actor id.
+     * @param yearIndex the year index.
+     * @return the entry index (the end of the actor's entries if there is none).
+     */
+    private int findEntry(final int actorId, final int yearIndex) {
+        int low = actorOffsets[actorId];
+        int high = actorOffsets[actorId + 1];
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (entryYearIndexes[middle] < yearIndex)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private static long packActorCount(final int actorId, final int count) {
+        return ((long) count << 32) | (Integer.MAX_VALUE - actorId);
+    }
+
+    private static int unpackActorId(final long actorCount) {
+        return Integer.MAX_VALUE - (int) actorCount;
+    }
+
+    private static int unpackCount(final long actorCount) {
+        return (int) (actorCount >>> 32);
+    }
+
+    /**
+     * Actor and the number of movies of the actor in a range of years.
+     */
+    public static class ActorCount {
+        private final String actorName;
+        private final int actorId;
+        private final int movieCount;
+
+        public ActorCount(final String actorName, final int actorId, final int movieCount) {
+            this.actorName = actorName;
+            this.actorId = actorId;
+            this.movieCount = movieCount;
+        }
+
+        public String getActorName() {
+            return actorName;
+        }
+
+        public int getActorId() {
+            return actorId;
+        }
+
+        public int getMovieCount() {
+            return movieCount;
+        }
+
+        @Override
+        public String toString() {
+            return actorName + ": " + movieCount;
+        }
+    }
+}
@@ -1,16 +1,40 @@
 package com.github.freekdb.groovy_and_java_8.sinks;
 
+import com.github.freekdb.groovy_and_java_8.movies.ActorYearCounter;
+import com.github.freekdb.groovy_and_java_8.movies.HyperLogLog;
+import com.github.freekdb.groovy_and_java_8.movies.MovieField;
+import com.github.freekdb.groovy_and_java_8.movies.MovieLineTokenizer;
+import com.github.freekdb.groovy_and_java_8.movies.MovieSnapshot;
+import com.github.freekdb.groovy_and_java_8.movies.MovieStore;
+import com.github.freekdb.groovy_and_java_8.movies.SpaceSaving;
+import com.github.freekdb.groovy_and_java_8.movies.Utf8Dictionary;
+import com.github.freekdb.groovy_and_java_8.util.LongCounter;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IntSummaryStatistics;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.IntStream;
 
 /**
@@ -19,36 +43,215 @@ import java.util.stream.IntStream;
  * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
  */
 public class JavaSourceAndSinks {
+    /**
+     * Main method.
+     *
+     * @param arguments command-line arguments: "--parallel" to read the file with a parallel fork, "--snapshot" to
+     *                  read the movies from the binary snapshot of the file, "--approximate" to count distinct values
+     *                  with HyperLogLog sketches, "--validate-distinct" to run exact and approximate distinct counts
+     *                  side by side, "--follow" (with optional "--interval seconds" and "--always-report") to keep
+     *                  following the file as it grows, "--instrument" to measure the parsing and every sink (with a
+     *                  summary after the reports and JMX MBeans), "--years-only" to run only the sinks that read
+     *                  the release years (which lets the source skip the titles and actors), "--pipelined" to run
+     *                  every sink on its own thread behind a ring buffer (instead of "--parallel" and "--instrument"),
+     *                  and "--heavy-hitters" (with optional "--heavy-hitters-capacity count") to add the approximate
+     *                  top actors and actor-year pairs of Space-Saving summaries.
+     */
     public static void main(final String[] arguments) {
-        new JavaSourceAndSinks().runSourceAndSinks();
+        final List<String> options = Arrays.asList(arguments);
+        final DistinctMode distinctMode = options.contains("--validate-distinct") ? DistinctMode.VALIDATE
+                                          : options.contains("--approximate") ? DistinctMode.APPROXIMATE
+                                          : DistinctMode.EXACT;
+        final boolean instrumented = options.contains("--instrument");
+        final boolean yearsOnly = options.contains("--years-only");
+        final boolean follow = options.contains("--follow");
+        final boolean parallel = !follow && options.contains("--parallel");
+        final List<Sink> sinks = yearsOnly ? createYearSinks() : createSinks(distinctMode);
+        if (!yearsOnly && options.contains("--heavy-hitters")) {
+            final int capacityIndex = options.indexOf("--heavy-hitters-capacity");
+            sinks.add(new HeavyHitters(capacityIndex != -1 ? Integer.parseInt(options.get(capacityIndex + 1))
+                                                           : HeavyHitters.DEFAULT_CAPACITY));
+        }
+        final Sink fork;
+        if (options.contains("--pipelined"))
+            fork = new PipelinedFork(sinks);
+        else {
+            final Fork plainFork = new Fork(parallel, instrumented);
+            sinks.forEach(plainFork::addSink);
+            if (instrumented)
+                plainFork.registerMBeans();
+            fork = plainFork;
+        }
+        if (follow) {
+            final int intervalIndex = options.indexOf("--interval");
+            final long intervalSeconds = intervalIndex != -1 ? Long.parseLong(options.get(intervalIndex + 1)) : 5;
+            new JavaSourceAndSinks().followSourceAndSinks(fork, intervalSeconds, options.contains("--always-report"));
+        } else
+            new JavaSourceAndSinks().runSourceAndSinks(fork, options.contains("--snapshot"));
     }
 
-    private void runSourceAndSinks() {
-        final Fork fork = new Fork();
-        fork.addSink(new MovieCounter());
-        fork.addSink(new DistinctTitles());
-        fork.addSink(new ClintFinder());
-        fork.addSink(new DistinctYears());
-        fork.addSink(new YearsWithoutMovies());
-        fork.addSink(new ProlificActor());
-        fork.addSink(new ProlificActorYear());
-        fork.addSink(new MostBusyYear());
-
-        new FileSource(fork).read("data/movies-mpaa.txt");
+    private void runSourceAndSinks(final Sink fork, final boolean snapshot) {
+        if (snapshot)
+            new StoreSource(fork).read("data/movies-mpaa.txt");
+        else
+            new FileSource(fork).read("data/movies-mpaa.txt");
         fork.report();
+        if (fork instanceof PipelinedFork)
+            ((PipelinedFork) fork).close();
+    }
+
+    private void followSourceAndSinks(final Sink fork, final long intervalSeconds, final boolean alwaysReport) {
+        new FollowingFileSource(fork, "data/movies-mpaa.txt").follow(TimeUnit.SECONDS.toMillis(intervalSeconds),
+                                                                     alwaysReport);
+    }
+
+    static Fork createFork(final boolean parallel) {
+        return createFork(parallel, DistinctMode.EXACT);
+    }
+
+    static Fork createFork(final boolean parallel, final DistinctMode distinctMode) {
+        return createFork(parallel, distinctMode, false);
+    }
+
+    static Fork createFork(final boolean parallel, final DistinctMode distinctMode, final boolean instrumented) {
+        final Fork fork = new Fork(parallel, instrumented);
+        createSinks(distinctMode).forEach(fork::addSink);
+        return fork;
+    }
+
+    /**
+     * Create the sinks that only read the release years, so the sources can skip the titles and actors.
+     *
+     * @return the sinks.
+     */
+    static List<Sink> createYearSinks() {
+        return new ArrayList<>(Arrays.asList(new MovieCounter(), new DistinctYears(), new YearsWithoutMovies(),
+                                             new MostBusyYear()));
     }
+
+    static List<Sink> createSinks(final DistinctMode distinctMode) {
+        final List<Sink> sinks = new ArrayList<>();
+        sinks.add(new MovieCounter());
+        switch (distinctMode) {
+            case EXACT:
+                sinks.add(new DistinctTitles());
+                sinks.add(new ClintFinder());
+                sinks.add(new DistinctYears());
+                break;
+            case APPROXIMATE:
+                sinks.add(new ApproximateDistinctTitles());
+                sinks.add(new ClintFinder());
+                sinks.add(new ApproximateDistinctYears());
+                sinks.add(new ApproximateDistinctActors());
+                break;
+            case VALIDATE:
+                sinks.add(new DistinctValidation("titles", new DistinctTitles(), new ApproximateDistinctTitles()));
+                sinks.add(new ClintFinder());
+                sinks.add(new DistinctValidation("years", new DistinctYears(), new ApproximateDistinctYears()));
+                sinks.add(new DistinctValidation("actors", new DistinctActors(), new ApproximateDistinctActors()));
+                break;
+        }
+        sinks.add(new YearsWithoutMovies());
+        sinks.add(new ProlificActor());
+        sinks.add(new ProlificActorYear());
+        sinks.add(new MostBusyYear());
+        return sinks;
+    }
+}
+
+/**
+ * How the distinct titles, years, and actors are counted: exactly with hash sets, approximately with HyperLogLog
+ * sketches, or both side by side to validate the approximation.
+ */
+enum DistinctMode {
+    EXACT, APPROXIMATE, VALIDATE
 }
 
+/**
+ * A sink processes movie lines and reports its results. Sinks follow the same supplier/accumulate/combine shape as a
+ * stream collector: a parallel source gives every worker its own partial instance (created with newPartial) and merges
+ * the partials back with combine before report is called. The actors list belongs to the source, which may reuse it for
+ * the next line: sinks that keep the list itself should copy it.
+ * <p>
+ * Every sink declares the fields it reads with getFields. The sources only parse the fields that at least one sink
+ * needs and pass null for a title or appendix, zero for a year, and an empty list for actors that nobody reads.
+ */
 interface Sink {
     void processLine(final String title, final int year, final String appendix, final List<String> actors);
     void report();
+    Sink newPartial();
+    void combine(final Sink partial);
+
+    default Set<MovieField> getFields() {
+        return EnumSet.allOf(MovieField.class);
+    }
 }
 
+/**
+ * Sink that sends every line to a list of sinks. An instrumented fork wraps every sink to measure its processLine and
+ * report times, measures the parsing in FileSource as well, and prints a summary after the reports; without
+ * instrumentation the sinks are called directly, so there is no overhead.
+ */
 class Fork implements Sink {
     private final List<Sink> sinks = new ArrayList<>();
+    private final boolean parallel;
+    private final boolean instrumented;
+    private final SinkMetrics parseMetrics;
+
+    public Fork() {
+        this(false);
+    }
+
+    public Fork(final boolean parallel) {
+        this(parallel, false);
+    }
+
+    public Fork(final boolean parallel, final boolean instrumented) {
+        this(parallel, instrumented, instrumented ? new SinkMetrics("FileSource (parsing)") : null);
+    }
+
+    private Fork(final boolean parallel, final boolean instrumented, final SinkMetrics parseMetrics) {
+        this.parallel = parallel;
+        this.instrumented = instrumented;
+        this.parseMetrics = parseMetrics;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Get the metrics for the parsing of the lines that are sent to this fork.
+     *
+     * @return the parse metrics, or null if the fork is not instrumented.
+     */
+    public SinkMetrics getParseMetrics() {
+        return parseMetrics;
+    }
 
     public void addSink(final Sink sink) {
-        sinks.add(sink);
+        sinks.add(instrumented ? new InstrumentedSink(sink, sinks.size() + 1) : sink);
+    }
+
+    List<Sink> getSinks() {
+        return Collections.unmodifiableList(sinks);
+    }
+
+    /**
+     * Register the metrics of the parsing and of all sinks on the platform MBean server, so they can be watched with
+     * JConsole or another JMX client while the fork runs.
+     */
+    public void registerMBeans() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (final SinkMetrics metrics : getAllMetrics())
+            try {
+                server.registerMBean(metrics,
+                                     new ObjectName(SinkMetrics.class.getPackage().getName()
+                                                    + ":type=SinkMetrics,name="
+                                                    + ObjectName.quote(metrics.getName())));
+            } catch (final JMException e) {
+                e.printStackTrace();
+            }
     }
 
     @Override
@@ -59,31 +262,732 @@ class Fork implements Sink {
     @Override
     public void report() {
         sinks.forEach(Sink::report);
+        if (parseMetrics != null)
+            printMetrics();
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        final Set<MovieField> fields = EnumSet.noneOf(MovieField.class);
+        sinks.forEach(sink -> fields.addAll(sink.getFields()));
+        return fields;
+    }
+
+    @Override
+    public Sink newPartial() {
+        final Fork partial = new Fork(parallel, false, parseMetrics != null ? parseMetrics.newPartial() : null);
+        sinks.forEach(sink -> partial.sinks.add(sink.newPartial()));
+        return partial;
+    }
+
+    @Override
+    public void combine(final Sink partial) {
+        final Fork partialFork = (Fork) partial;
+        final List<Sink> partialSinks = partialFork.sinks;
+        for (int sinkIndex = 0; sinkIndex < sinks.size(); sinkIndex++)
+            sinks.get(sinkIndex).combine(partialSinks.get(sinkIndex));
+        if (parseMetrics != null)
+            parseMetrics.combine(partialFork.parseMetrics);
+    }
+
+    private List<SinkMetrics> getAllMetrics() {
+        final List<SinkMetrics> allMetrics = new ArrayList<>();
+        allMetrics.add(parseMetrics);
+        sinks.forEach(sink -> allMetrics.add(((InstrumentedSink) sink).metrics));
+        return allMetrics;
+    }
+
+    private void printMetrics() {
+        System.out.println();
+        System.out.println(String.format("%-32s %10s %12s %9s %9s %9s %9s %10s", "Instrumentation", "lines",
+                                         "lines/s", "mean ns", "p50 ns", "p99 ns", "max ns", "report ms"));
+        for (final SinkMetrics metrics : getAllMetrics())
+            if (metrics.getLineCount() > 0)
+                System.out.println(String.format("%-32s %10d %12.0f %9.0f %9d %9d %9d %10s", metrics.getName(),
+                                                 metrics.getLineCount(), metrics.getLinesPerSecond(),
+                                                 metrics.getMeanNanos(), metrics.getMedianNanos(),
+                                                 metrics.getP99Nanos(), metrics.getMaximumNanos(),
+                                                 metrics != parseMetrics
+                                                 ? String.format("%.3f", metrics.getReportNanos() / 1e6) : ""));
+    }
+}
+
+/**
+ * Sink that measures the processLine and report times of another sink. Every partial has its own metrics (so workers
+ * do not share counters), which are included in the metrics of the original sink while they run and merged when the
+ * partials are combined.
+ */
+class InstrumentedSink implements Sink {
+    final Sink sink;
+    final SinkMetrics metrics;
+
+    InstrumentedSink(final Sink sink, final int sinkNumber) {
+        this(sink, new SinkMetrics(sinkNumber + " " + sink.getClass().getSimpleName()));
+    }
+
+    private InstrumentedSink(final Sink sink, final SinkMetrics metrics) {
+        this.sink = sink;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void processLine(final String title, final int year, final String appendix, final List<String> actors) {
+        final long start = System.nanoTime();
+        sink.processLine(title, year, appendix, actors);
+        metrics.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public void report() {
+        final long start = System.nanoTime();
+        sink.report();
+        metrics.recordReport(System.nanoTime() - start);
+    }
+
+    @Override
+    public Sink newPartial() {
+        return new InstrumentedSink(sink.newPartial(), metrics.newPartial());
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return sink.getFields();
+    }
+
+    @Override
+    public void combine(final Sink partial) {
+        final InstrumentedSink instrumentedPartial = (InstrumentedSink) partial;
+        sink.combine(instrumentedPartial.sink);
+        metrics.combine(instrumentedPartial.metrics);
+    }
+}
+
+/**
+ * Latency and throughput metrics of a sink: a histogram of the processLine times with power-of-two buckets (one
+ * numberOfLeadingZeros and one array increment per line), the total time, and the time of the last report. The fields
+ * are written by one thread without synchronization; JMX clients that read them while a run is busy may see slightly
+ * stale values.
+ * <p>
+ * The partial metrics of the workers of a parallel fork stay attached to the metrics they were created from until
+ * they are combined, and the getters add them up, so the registered metrics show the progress of a parallel run as
+ * well. Each worker still only writes its own partial.
+ */
+class SinkMetrics implements SinkMetricsMXBean {
+    private final String name;
+    private final SinkMetrics parent;
+    private final List<SinkMetrics> livePartials = new CopyOnWriteArrayList<>();
+    private final long[] histogram = new long[64];
+    private long lineCount;
+    private long totalNanos;
+    private long maximumNanos;
+    private long reportNanos;
+
+    SinkMetrics(final String name) {
+        this(name, null);
+    }
+
+    private SinkMetrics(final String name, final SinkMetrics parent) {
+        this.name = name;
+        this.parent = parent;
+    }
+
+    void record(final long nanos) {
+        histogram[63 - Long.numberOfLeadingZeros(nanos | 1)]++;
+        lineCount++;
+        totalNanos += nanos;
+        maximumNanos = Math.max(maximumNanos, nanos);
+    }
+
+    void recordReport(final long nanos) {
+        reportNanos = nanos;
+    }
+
+    SinkMetrics newPartial() {
+        final SinkMetrics partial = new SinkMetrics(name, this);
+        livePartials.add(partial);
+        return partial;
+    }
+
+    void combine(final SinkMetrics partial) {
+        // Detach the partial first: a concurrent reader may briefly miss its lines, but never counts them twice.
+        if (partial.parent != null)
+            partial.parent.livePartials.remove(partial);
+        for (int bucket = 0; bucket < histogram.length; bucket++)
+            histogram[bucket] += partial.histogram[bucket];
+        lineCount += partial.lineCount;
+        totalNanos += partial.totalNanos;
+        maximumNanos = Math.max(maximumNanos, partial.maximumNanos);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getLineCount() {
+        long liveLineCount = lineCount;
+        for (final SinkMetrics partial : livePartials)
+            liveLineCount += partial.lineCount;
+        return liveLineCount;
+    }
+
+    @Override
+    public long getTotalNanos() {
+        long liveTotalNanos = totalNanos;
+        for (final SinkMetrics partial : livePartials)
+            liveTotalNanos += partial.totalNanos;
+        return liveTotalNanos;
+    }
+
+    @Override
+    public double getLinesPerSecond() {
+        final long liveTotalNanos = getTotalNanos();
+        return liveTotalNanos > 0 ? getLineCount() * 1e9 / liveTotalNanos : 0;
+    }
+
+    @Override
+    public double getMeanNanos() {
+        final long liveLineCount = getLineCount();
+        return liveLineCount > 0 ? (double) getTotalNanos() / liveLineCount : 0;
+    }
+
+    @Override
+    public long getMedianNanos() {
+        return getPercentileNanos(0.5);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return getPercentileNanos(0.99);
+    }
+
+    @Override
+    public long getMaximumNanos() {
+        long liveMaximumNanos = maximumNanos;
+        for (final SinkMetrics partial : livePartials)
+            liveMaximumNanos = Math.max(liveMaximumNanos, partial.maximumNanos);
+        return liveMaximumNanos;
+    }
+
+    @Override
+    public long getReportNanos() {
+        return reportNanos;
+    }
+
+    @Override
+    public long[] getHistogram() {
+        final long[] liveHistogram = histogram.clone();
+        for (final SinkMetrics partial : livePartials)
+            for (int bucket = 0; bucket < liveHistogram.length; bucket++)
+                liveHistogram[bucket] += partial.histogram[bucket];
+        return liveHistogram;
+    }
+
+    /**
+     * Estimate a percentile of the processLine times by the upper bound of the histogram bucket that contains it.
+     *
+     * @param fraction the percentile as a fraction between 0 and 1.
+     * @return the estimated percentile in nanoseconds (never more than the maximum).
+     */
+    private long getPercentileNanos(final double fraction) {
+        final long[] liveHistogram = getHistogram();
+        final long rank = (long) Math.ceil(fraction * Arrays.stream(liveHistogram).sum());
+        final long liveMaximumNanos = getMaximumNanos();
+        long count = 0;
+        for (int bucket = 0; bucket < liveHistogram.length; bucket++) {
+            count += liveHistogram[bucket];
+            if (count >= rank && count > 0)
+                return Math.min(liveMaximumNanos, bucket < 62 ? (2L << bucket) - 1 : Long.MAX_VALUE);
+        }
+        return 0;
+    }
+}
+
+/**
+ * Fork that runs every sink on its own consumer thread, so the parsing overlaps with the sinks and each sink only runs
+ * at its own pace. The source thread copies every line into a slot of a pre-allocated ring buffer (the actors into the
+ * list of the slot, since the source reuses its list) and publishes the slots in batches; a consumer processes the
+ * published slots a batch at a time and is only woken when it has run out of work. When the slowest consumer is a whole
+ * ring behind, the source waits (backpressure), so memory use is bounded.
+ * <p>
+ * The sinks are not changed: each sink is only called from its own consumer thread, and report waits until every
+ * consumer has drained the buffer before it reports the sinks on the calling thread. A partial is a plain fork with
+ * partials of the sinks, which runs on the thread that uses it; combine waits until every consumer has caught up before
+ * it combines the partial sinks into the sinks on the calling thread. Close stops the consumer threads.
+ */
+class PipelinedFork implements Sink, AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 1 << 14;
+    private static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final List<Sink> sinks;
+    private final Slot[] slots;
+    private final int mask;
+    private final int batchSize;
+    private final List<SinkConsumer> consumers = new ArrayList<>();
+    private volatile long publishedCount;
+    private volatile Thread waitingSource;
+    private volatile boolean closed;
+    private long lineCount;
+    private long minimumConsumedCount;
+
+    public PipelinedFork(final List<Sink> sinks) {
+        this(sinks, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Create a pipelined fork and start a consumer thread for every sink.
+     *
+     * @param sinks     the sinks.
+     * @param capacity  the number of slots in the ring buffer (a power of two).
+     * @param batchSize the number of lines that are published and consumed at once (at most the capacity).
+     */
+    public PipelinedFork(final List<Sink> sinks, final int capacity, final int batchSize) {
+        if (Integer.bitCount(capacity) != 1 || batchSize < 1 || batchSize > capacity)
+            throw new IllegalArgumentException("The capacity should be a power of two and the batch size should be "
+                                               + "between 1 and the capacity.");
+        this.sinks = new ArrayList<>(sinks);
+        this.slots = new Slot[capacity];
+        for (int slotIndex = 0; slotIndex < capacity; slotIndex++)
+            slots[slotIndex] = new Slot();
+        this.mask = capacity - 1;
+        this.batchSize = batchSize;
+        for (int sinkIndex = 0; sinkIndex < this.sinks.size(); sinkIndex++) {
+            final Sink sink = this.sinks.get(sinkIndex);
+            consumers.add(new SinkConsumer(sink, (sinkIndex + 1) + " " + sink.getClass().getSimpleName()));
+        }
+        consumers.forEach(consumer -> consumer.thread.start());
+    }
+
+    @Override
+    public void processLine(final String title, final int year, final String appendix, final List<String> actors) {
+        if (lineCount - minimumConsumedCount >= slots.length)
+            awaitConsumers(lineCount - slots.length + 1);
+        final Slot slot = slots[(int) lineCount & mask];
+        slot.title = title;
+        slot.year = year;
+        slot.appendix = appendix;
+        slot.actors.clear();
+        slot.actors.addAll(actors);
+        lineCount++;
+        if (lineCount - publishedCount >= batchSize)
+            publish();
+    }
+
+    /**
+     * Wait until every consumer has processed all lines and report the sinks.
+     *
+     * @throws IllegalStateException if a sink has failed.
+     */
+    @Override
+    public void report() {
+        awaitConsumers(lineCount);
+        for (final SinkConsumer consumer : consumers)
+            if (consumer.failure != null)
+                throw new IllegalStateException("Sink " + consumer.name + " failed.", consumer.failure);
+        sinks.forEach(Sink::report);
+    }
+
+    @Override
+    public Sink newPartial() {
+        final Fork partial = new Fork();
+        sinks.forEach(sink -> partial.addSink(sink.newPartial()));
+        return partial;
+    }
+
+    /**
+     * Combine a partial that was created by newPartial. The consumers first process all lines that have been sent, so
+     * no consumer thread uses the sinks while the partial sinks are combined into them.
+     *
+     * @param partial the partial fork.
+     */
+    @Override
+    public void combine(final Sink partial) {
+        awaitConsumers(lineCount);
+        final List<Sink> partialSinks = ((Fork) partial).getSinks();
+        for (int sinkIndex = 0; sinkIndex < sinks.size(); sinkIndex++)
+            sinks.get(sinkIndex).combine(partialSinks.get(sinkIndex));
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        final Set<MovieField> fields = EnumSet.noneOf(MovieField.class);
+        sinks.forEach(sink -> fields.addAll(sink.getFields()));
+        return fields;
+    }
+
+    /**
+     * Let the consumers process the remaining lines and stop their threads.
+     */
+    @Override
+    public void close() {
+        publish();
+        closed = true;
+        for (final SinkConsumer consumer : consumers) {
+            LockSupport.unpark(consumer.thread);
+            try {
+                consumer.thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void publish() {
+        publishedCount = lineCount;
+        for (final SinkConsumer consumer : consumers)
+            if (consumer.waiting)
+                LockSupport.unpark(consumer.thread);
+    }
+
+    /**
+     * Publish the pending lines and wait until every consumer has processed a number of lines. The source announces
+     * itself as waiting before it checks the consumers again, and the consumers check for a waiting source after they
+     * have advanced, so a wake-up cannot be missed.
+     *
+     * @param consumedCount the number of lines that every consumer should have processed.
+     */
+    private void awaitConsumers(final long consumedCount) {
+        publish();
+        while ((minimumConsumedCount = getMinimumConsumedCount()) < consumedCount) {
+            waitingSource = Thread.currentThread();
+            if (getMinimumConsumedCount() < consumedCount)
+                LockSupport.park(this);
+            waitingSource = null;
+        }
+    }
+
+    private long getMinimumConsumedCount() {
+        long minimum = Long.MAX_VALUE;
+        for (final SinkConsumer consumer : consumers)
+            minimum = Math.min(minimum, consumer.consumedCount);
+        return minimum;
+    }
+
+    /**
+     * Line in the ring buffer.
+     */
+    private static class Slot {
+        private String title;
+        private int year;
+        private String appendix;
+        private final List<String> actors = new ArrayList<>();
+    }
+
+    /**
+     * Consumer thread that sends the published lines to one sink. A failing sink stops its consumer, which then no
+     * longer holds up the source; the failure is thrown by report.
+     */
+    private class SinkConsumer implements Runnable {
+        private final Sink sink;
+        private final String name;
+        private final Thread thread;
+        private volatile long consumedCount;
+        private volatile boolean waiting;
+        private volatile Throwable failure;
+
+        private SinkConsumer(final Sink sink, final String name) {
+            this.sink = sink;
+            this.name = name;
+            this.thread = new Thread(this, "PipelinedFork " + name);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long consumed = 0;
+            try {
+                while (true) {
+                    final long available = publishedCount;
+                    if (available > consumed) {
+                        final long batchEnd = Math.min(available, consumed + batchSize);
+                        for (; consumed < batchEnd; consumed++) {
+                            final Slot slot = slots[(int) consumed & mask];
+                            sink.processLine(slot.title, slot.year, slot.appendix, slot.actors);
+                        }
+                        advance(consumed);
+                    } else if (closed)
+                        return;
+                    else {
+                        waiting = true;
+                        if (publishedCount == consumed && !closed)
+                            LockSupport.park(this);
+                        waiting = false;
+                    }
+                }
+            } catch (final RuntimeException | Error e) {
+                failure = e;
+                advance(Long.MAX_VALUE);
+            }
+        }
+
+        private void advance(final long consumed) {
+            consumedCount = consumed;
+            final Thread source = waitingSource;
+            if (source != null)
+                LockSupport.unpark(source);
+        }
     }
 }
 
 class FileSource {
+    private static final long MINIMUM_RANGE_SIZE = 1 << 20;
+
     private Sink sink;
 
     public FileSource(final Sink sink) {
         this.sink = sink;
     }
 
+    /**
+     * Read a movies file and send all lines to the sink. The file is read in blocks that are tokenized at once. When
+     * the sink is a parallel fork, the file is split into byte ranges and every worker thread sends the lines of its
+     * ranges to its own partial sink; the partials are combined at the end.
+     *
+     * @param filePath the input file path.
+     */
+    public void read(final String filePath) {
+        try (final FileChannel channel = FileChannel.open(new File(filePath).toPath(), StandardOpenOption.READ)) {
+            if (sink instanceof Fork && ((Fork) sink).isParallel()) {
+                final long[] rangeStarts = MovieLineTokenizer.splitIntoRanges(channel, MINIMUM_RANGE_SIZE);
+                sink.combine(IntStream.range(0, rangeStarts.length - 1).parallel()
+                                 .collect(() -> new LineSender(sink.newPartial()),
+                                          (sender, range) -> sender.sendUnchecked(channel, rangeStarts[range],
+                                                                                  rangeStarts[range + 1]),
+                                          LineSender::combine).sink);
+            } else
+                new LineSender(sink).send(channel, 0, channel.size(), true);
+        } catch (final IOException e) {
+            e.printStackTrace();
+        } catch (final UncheckedIOException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    /**
+     * Sends the lines of a byte range to a sink. The titles and actor names are looked up by their UTF-8 bytes in
+     * dictionaries, so a String is only created for the first appearance of a title or actor, and the same actor list
+     * is reused for every line: in steady state, reading a line creates no garbage.
+     * <p>
+     * Only the fields that the sink needs are parsed. Without actors, the tokenizer skips the slashes and the rest of a
+     * line after its year, and without titles the title dictionary is not used, so year-only sinks read a file at
+     * close to the speed of scanning it for newlines.
+     * <p>
+     * When the sink is an instrumented fork, the parse time of a line is the time between the end of the previous
+     * processLine call and the start of this one, which includes reading and tokenizing the blocks.
+     */
+    static class LineSender {
+        private final Sink sink;
+        private final SinkMetrics parseMetrics;
+        private final MovieLineTokenizer tokenizer = new MovieLineTokenizer();
+        private final Utf8Dictionary titles = new Utf8Dictionary();
+        private final Utf8Dictionary actorNames = new Utf8Dictionary();
+        private final List<String> actors = new ArrayList<>();
+        private final boolean titleNeeded;
+        private final boolean yearNeeded;
+        private final String appendix;
+        private final boolean actorsNeeded;
+        private long parseStart;
+
+        LineSender(final Sink sink) {
+            this.sink = sink;
+            this.parseMetrics = sink instanceof Fork ? ((Fork) sink).getParseMetrics() : null;
+            final Set<MovieField> fields = sink.getFields();
+            this.titleNeeded = fields.contains(MovieField.TITLE);
+            this.yearNeeded = fields.contains(MovieField.YEAR);
+            this.appendix = fields.contains(MovieField.APPENDIX) ? "[not used]" : null;
+            this.actorsNeeded = fields.contains(MovieField.ACTORS);
+            tokenizer.setActorsTokenized(actorsNeeded);
+        }
+
+        /**
+         * Read a byte range of a file in blocks and send the lines to the sink.
+         *
+         * @param channel    the file channel.
+         * @param start      the start of the byte range (inclusive).
+         * @param end        the end of the byte range (exclusive).
+         * @param endOfInput whether a last line without a newline should be sent as well.
+         * @return the position after the last line that was sent.
+         * @throws IOException if the file cannot be read.
+         */
+        long send(final FileChannel channel, final long start, final long end, final boolean endOfInput)
+            throws IOException {
+            if (parseMetrics != null) {
+                parseStart = System.nanoTime();
+                return tokenizer.tokenize(channel, start, end, endOfInput, this::sendLinesMeasured);
+            }
+            return tokenizer.tokenize(channel, start, end, endOfInput, this::sendLines);
+        }
+
+        void sendUnchecked(final FileChannel channel, final long start, final long end) {
+            try {
+                send(channel, start, end, true);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void combine(final LineSender partial) {
+            sink.combine(partial.sink);
+        }
+
+        private void sendLines(final MovieLineTokenizer tokenizer) {
+            for (int line = 0; line < tokenizer.getLineCount(); line++)
+                if (!tokenizer.isEmpty(line))
+                    sendLine(tokenizer, line);
+        }
+
+        private void sendLinesMeasured(final MovieLineTokenizer tokenizer) {
+            for (int line = 0; line < tokenizer.getLineCount(); line++)
+                if (!tokenizer.isEmpty(line)) {
+                    sendLine(tokenizer, line);
+                    parseStart = System.nanoTime();
+                }
+        }
+
+        private void sendLine(final MovieLineTokenizer tokenizer, final int line) {
+            final byte[] bytes = tokenizer.getBytes();
+            final String title = titleNeeded ? titles.get(titles.add(bytes, tokenizer.getTitleStart(line),
+                                                                     tokenizer.getTitleEnd(line)))
+                                 : null;
+            final int releaseYear = yearNeeded ? tokenizer.getReleaseYear(line) : 0;
+            if (actorsNeeded) {
+                actors.clear();
+                final int actorCount = tokenizer.findActors(line, true);
+                for (int actor = 0; actor < actorCount; actor++)
+                    actors.add(actorNames.get(actorNames.add(bytes, tokenizer.getActorStart(actor),
+                                                             tokenizer.getActorEnd(actor))));
+            }
+            if (parseMetrics != null)
+                parseMetrics.record(System.nanoTime() - parseStart);
+            sink.processLine(title, releaseYear, appendix, actors);
+        }
+    }
+}
+
+/**
+ * Source that follows a growing movies file like "tail -f". It remembers the byte offset up to which it has consumed
+ * the file and every poll only reads the bytes appended since then; a last line without a newline is left for the next
+ * poll, so only complete lines reach the sink. The cost of a poll depends on the size of the new data, not on the size
+ * of the file.
+ */
+class FollowingFileSource {
+    private final Sink sink;
+    private final Path path;
+    private final FileSource.LineSender lineSender;
+    private long offset;
+
+    public FollowingFileSource(final Sink sink, final String filePath) {
+        this.sink = sink;
+        this.path = new File(filePath).toPath();
+        this.lineSender = new FileSource.LineSender(sink);
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Send all complete lines that were appended since the previous poll to the sink.
+     *
+     * @return the number of bytes that were consumed.
+     * @throws IOException if the file cannot be read.
+     */
+    public long poll() throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < offset) {
+                System.out.println("File " + path + " was truncated; following it from its new end.");
+                offset = size;
+                return 0;
+            }
+            final long previousOffset = offset;
+            offset = lineSender.send(channel, offset, size, false);
+            return offset - previousOffset;
+        }
+    }
+
+    /**
+     * Poll the file at a fixed interval (starting immediately) on a background thread, and report the results of the
+     * sink after every poll that found new lines, or after every poll if alwaysReport is set.
+     *
+     * @param intervalMillis the interval between polls in milliseconds.
+     * @param alwaysReport   whether to report after polls without new lines as well.
+     * @return the executor that runs the polls; shut it down to stop following the file.
+     */
+    public ScheduledExecutorService follow(final long intervalMillis, final boolean alwaysReport) {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                final long byteCount = poll();
+                if (byteCount > 0 || alwaysReport) {
+                    System.out.println();
+                    System.out.println(String.format("%d new bytes (offset %d):", byteCount, offset));
+                    sink.report();
+                }
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        return executor;
+    }
+}
+
+class StoreSource {
+    private Sink sink;
+
+    public StoreSource(final Sink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Load the movie store for a movies file (from its binary snapshot when that is still valid) and send all movies to
+     * the sink. When the sink is a parallel fork, the movies are divided over worker threads with partial sinks.
+     *
+     * @param filePath the input file path.
+     */
     public void read(final String filePath) {
         try {
-            Files.lines(new File(filePath).toPath()).forEach(line -> {
-                final int startIndexYear = line.indexOf('(') + 1;
-                final int endIndexYear = Math.min(line.indexOf(')', startIndexYear), startIndexYear + 4);
-                final int startIndexActors = line.indexOf('/');
-                final String title = line.substring(0, startIndexYear - 1).trim();
-                final int releaseYear = Integer.parseInt(line.substring(startIndexYear, endIndexYear));
-                final List<String> actors = Arrays.asList(line.substring(startIndexActors + 1).trim().split("/"));
-                sink.processLine(title, releaseYear, "[not used]", actors);
-            });
+            send(MovieSnapshot.loadOrCreate(new File(filePath).toPath()));
         } catch (final IOException e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Send all movies in a store to the sink.
+     *
+     * @param store the movie store.
+     */
+    public void send(final MovieStore store) {
+        final int movieCount = store.getMovieCount();
+        final Set<MovieField> fields = sink.getFields();
+        if (sink instanceof Fork && ((Fork) sink).isParallel())
+            sink.combine(IntStream.range(0, movieCount).parallel()
+                             .collect(sink::newPartial,
+                                      (partial, movieIndex) -> sendMovie(store, fields, partial, movieIndex),
+                                      Sink::combine));
+        else
+            for (int movieIndex = 0; movieIndex < movieCount; movieIndex++)
+                sendMovie(store, fields, sink, movieIndex);
+    }
+
+    private static void sendMovie(final MovieStore store, final Set<MovieField> fields, final Sink target,
+                                  final int movieIndex) {
+        final List<String> actors;
+        if (fields.contains(MovieField.ACTORS)) {
+            final int castStart = store.getCastStart(movieIndex);
+            final String[] actorNames = new String[store.getCastEnd(movieIndex) - castStart];
+            for (int actorIndex = 0; actorIndex < actorNames.length; actorIndex++)
+                actorNames[actorIndex] = store.getActorName(store.getCastActorId(castStart + actorIndex));
+            actors = Arrays.asList(actorNames);
+        } else
+            actors = Collections.emptyList();
+        target.processLine(fields.contains(MovieField.TITLE) ? store.getTitle(movieIndex) : null,
+                           fields.contains(MovieField.YEAR) ? store.getReleaseYear(movieIndex) : 0,
+                           fields.contains(MovieField.APPENDIX) ? "[not used]" : null, actors);
+    }
 }
 
 class MovieCounter implements Sink {
@@ -99,9 +1003,31 @@ class MovieCounter implements Sink {
     public void report() {
         System.out.println(String.format(doc, movieCount));
     }
+
+    @Override
+    public Sink newPartial() {
+        return new MovieCounter();
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return EnumSet.noneOf(MovieField.class);
+    }
+
+    @Override
+    public void combine(final Sink partial) {
+        movieCount += ((MovieCounter) partial).movieCount;
+    }
 }
 
-class DistinctTitles implements Sink {
+/**
+ * Sink that counts distinct values, exactly or approximately.
+ */
+interface DistinctCount {
+    long getDistinctCount();
+}
+
+class DistinctTitles implements Sink, DistinctCount {
     private Set<String> titles = new HashSet<>();
 
     @Override
@@ -113,6 +1039,26 @@ class DistinctTitles implements Sink {
     public void report() {
         System.out.println(String.format("Total number of distinct titles: %d.", titles.size()));
     }
+
+    @Override
+    public Sink newPartial() {
+        return new DistinctTitles();
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return EnumSet.of(MovieField.TITLE);
+    }
+
+    @Override
+    public void combine(final Sink partial) {
+        titles.addAll(((DistinctTitles) partial).titles);
+    }
+
+    @Override
+    public long getDistinctCount() {
+        return titles.size();
+    }
 }
 
 class ClintFinder extends MovieCounter {
@@ -125,6 +1071,16 @@ class ClintFinder extends MovieCounter {
         if (actors.contains("Eastwood, Clint"))
             movieCount++;
     }
+
+    @Override
+    public Sink newPartial() {
+        return new ClintFinder();
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return EnumSet.of(MovieField.ACTORS);
+    }
 }
 
 class DistinctYears extends DistinctTitles {
@@ -139,6 +1095,213 @@ class DistinctYears extends DistinctTitles {
     public void report() {
         System.out.println(String.format("Distinct years: %d.", years.size()));
     }
+
+    @Override
+    public Sink newPartial() {
+        return new DistinctYears();
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return EnumSet.of(MovieField.YEAR);
+    }
+
+    @Override
+    public void combine(final Sink partial) {
+        years.addAll(((DistinctYears) partial).years);
+    }
+
+    @Override
+    public long getDistinctCount() {
+        return years.size();
+    }
+}
+
+class DistinctActors implements Sink, DistinctCount {
+    private Set<String> actors = new HashSet<>();
+
+    @Override
+    public void processLine(final String title, final int year, final String appendix, final List<String> actors) {
+        this.actors.addAll(actors);
+    }
+
+    @Override
+    public void report() {
+        System.out.println(String.format("Distinct actors: %d.", actors.size()));
+    }
+
+    @Override
+    public Sink newPartial() {
+        return new DistinctActors();
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return EnumSet.of(MovieField.ACTORS);
+    }
+
+    @Override
+    public void combine(final Sink partial) {
+        actors.addAll(((DistinctActors) partial).actors);
+    }
+
+    @Override
+    public long getDistinctCount() {
+        return actors.size();
+    }
+}
+
+/**
+ * Approximate distinct count of the titles with a HyperLogLog sketch of a few kilobytes (16 KB and a standard error of
+ * 0.8% with the default precision). The subclasses count other values with the same sketch.
+ */
+class ApproximateDistinctTitles implements Sink, DistinctCount {
+    protected String doc = "Approximate number of distinct titles: %d (standard error %.1f%%).";
+    protected final HyperLogLog sketch;
+
+    public ApproximateDistinctTitles() {
+        this(HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    public ApproximateDistinctTitles(final int precision) {
+        sketch = new HyperLogLog(precision);
+    }
+
+    @Override
+    public void processLine(final String title, final int year, final String appendix, final List<String> actors) {
+        sketch.add(title);
+    }
+
+    @Override
+    public void report() {
+        System.out.println(String.format(doc, sketch.estimate(), 100 * sketch.getStandardError()));
+    }
+
+    @Override
+    public Sink newPartial() {
+        return new ApproximateDistinctTitles(sketch.getPrecision());
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return EnumSet.of(MovieField.TITLE);
+    }
+
+    @Override
+    public void combine(final Sink partial) {
+        sketch.combine(((ApproximateDistinctTitles) partial).sketch);
+    }
+
+    @Override
+    public long getDistinctCount() {
+        return sketch.estimate();
+    }
+
+    public double getStandardError() {
+        return sketch.getStandardError();
+    }
+}
+
+class ApproximateDistinctYears extends ApproximateDistinctTitles {
+    public ApproximateDistinctYears() {
+        this(HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    public ApproximateDistinctYears(final int precision) {
+        super(precision);
+        doc = "Approximate number of distinct years: %d (standard error %.1f%%).";
+    }
+
+    @Override
+    public void processLine(final String title, final int year, final String appendix, final List<String> actors) {
+        sketch.add(year);
+    }
+
+    @Override
+    public Sink newPartial() {
+        return new ApproximateDistinctYears(sketch.getPrecision());
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return EnumSet.of(MovieField.YEAR);
+    }
+}
+
+class ApproximateDistinctActors extends ApproximateDistinctTitles {
+    public ApproximateDistinctActors() {
+        this(HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    public ApproximateDistinctActors(final int precision) {
+        super(precision);
+        doc = "Approximate number of distinct actors: %d (standard error %.1f%%).";
+    }
+
+    @Override
+    public void processLine(final String title, final int year, final String appendix, final List<String> actors) {
+        for (final String actor : actors)
+            sketch.add(actor);
+    }
+
+    @Override
+    public Sink newPartial() {
+        return new ApproximateDistinctActors(sketch.getPrecision());
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return EnumSet.of(MovieField.ACTORS);
+    }
+}
+
+/**
+ * Runs an exact and an approximate distinct count side by side and reports both with the relative error.
+ */
+class DistinctValidation implements Sink {
+    private final String name;
+    private final Sink exact;
+    private final ApproximateDistinctTitles approximate;
+
+    public DistinctValidation(final String name, final Sink exact, final ApproximateDistinctTitles approximate) {
+        this.name = name;
+        this.exact = exact;
+        this.approximate = approximate;
+    }
+
+    @Override
+    public void processLine(final String title, final int year, final String appendix, final List<String> actors) {
+        exact.processLine(title, year, appendix, actors);
+        approximate.processLine(title, year, appendix, actors);
+    }
+
+    @Override
+    public void report() {
+        final long exactCount = ((DistinctCount) exact).getDistinctCount();
+        final long approximateCount = approximate.getDistinctCount();
+        final double relativeError = exactCount != 0 ? 100.0 * (approximateCount - exactCount) / exactCount : 0;
+        System.out.println(String.format("Distinct %s: exact %d, approximate %d (%+.2f%%, standard error %.1f%%).",
+                                         name, exactCount, approximateCount, relativeError,
+                                         100 * approximate.getStandardError()));
+    }
+
+    @Override
+    public Sink newPartial() {
+        return new DistinctValidation(name, exact.newPartial(), (ApproximateDistinctTitles) approximate.newPartial());
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        final Set<MovieField> fields = EnumSet.copyOf(exact.getFields());
+        fields.addAll(approximate.getFields());
+        return fields;
+    }
+
+    @Override
+    public void combine(final Sink partial) {
+        exact.combine(((DistinctValidation) partial).exact);
+        approximate.combine(((DistinctValidation) partial).approximate);
+    }
 }
 
 class YearsWithoutMovies extends MostBusyYear {
@@ -152,6 +1315,11 @@ class YearsWithoutMovies extends MostBusyYear {
                 yearWithoutMovies.add(year);
         System.out.println(String.format("Years without movies: %s.", yearWithoutMovies));
     }
+
+    @Override
+    public Sink newPartial() {
+        return new YearsWithoutMovies();
+    }
 }
 
 class ProlificActor extends MostBusyYear {
@@ -175,35 +1343,59 @@ class ProlificActor extends MostBusyYear {
                 highestCount = actorToMovieCountEntry.getValue();
             } else if (actorToMovieCountEntry.getValue() == highestCount)
                 busiestActors.add(actorToMovieCountEntry.getKey());
+        Collections.sort(busiestActors);
         System.out.println(String.format("Most prolific actor(s): %s with %d movies.", busiestActors, highestCount));
     }
+
+    @Override
+    public Sink newPartial() {
+        return new ProlificActor();
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return EnumSet.of(MovieField.ACTORS);
+    }
+
+    @Override
+    public void combine(final Sink partial) {
+        ((ProlificActor) partial).actorToMovieCount.forEach((actor, count) -> actorToMovieCount.merge(actor, count,
+                                                                                                      Integer::sum));
+    }
 }
 
 class ProlificActorYear extends MostBusyYear {
-    private Map<String, Integer> actorYearToMovieCount = new HashMap<>();
+    private ActorYearCounter<String> actorYearToMovieCount = new ActorYearCounter<>();
 
     @Override
     public void processLine(final String title, final int year, final String appendix, final List<String> actors) {
-        for (final String actor : actors) {
-            final String key = actor + " in " + year;
-            actorYearToMovieCount.put(key, actorYearToMovieCount.getOrDefault(key, 0) + 1);
-        }
+        for (final String actor : actors)
+            actorYearToMovieCount.add(actor, year);
     }
 
-    // todo: combine this with MostBusyYear.report?
     @Override
     public void report() {
         final List<String> busiestActors = new ArrayList<>();
-        int highestCount = 0;
-        for (final Map.Entry<String, Integer> actorYearToMovieCountEntry : actorYearToMovieCount.entrySet())
-            if (actorYearToMovieCountEntry.getValue() > highestCount) {
-                busiestActors.clear();
-                busiestActors.add(actorYearToMovieCountEntry.getKey());
-                highestCount = actorYearToMovieCountEntry.getValue();
-            } else if (actorYearToMovieCountEntry.getValue() == highestCount)
-                busiestActors.add(actorYearToMovieCountEntry.getKey());
+        for (final ActorYearCounter.ActorYear<String> actorYear : actorYearToMovieCount.getMostActive())
+            busiestActors.add(actorYear.toString());
+        Collections.sort(busiestActors);
         System.out.println(String.format("Most prolific actor(s) in one year: %s with %d movies.", busiestActors,
-                                         highestCount));
+                                         actorYearToMovieCount.getMaximumCount()));
+    }
+
+    @Override
+    public Sink newPartial() {
+        return new ProlificActorYear();
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return EnumSet.of(MovieField.YEAR, MovieField.ACTORS);
+    }
+
+    @Override
+    public void combine(final Sink partial) {
+        actorYearToMovieCount.combine(((ProlificActorYear) partial).actorYearToMovieCount);
     }
 }
 
@@ -226,6 +1418,120 @@ class MostBusyYear extends MovieCounter {
                 highestCount = yearToMovieCountEntry.getValue();
             } else if (yearToMovieCountEntry.getValue() == highestCount)
                 busiestYears.add(yearToMovieCountEntry.getKey());
+        Collections.sort(busiestYears);
         System.out.println(String.format("Busiest movie year(s): %s with %d releases.", busiestYears, highestCount));
     }
+
+    @Override
+    public Sink newPartial() {
+        return new MostBusyYear();
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return EnumSet.of(MovieField.YEAR);
+    }
+
+    @Override
+    public void combine(final Sink partial) {
+        ((MostBusyYear) partial).yearToMovieCount.forEach((year, count) -> yearToMovieCount.merge(year, count,
+                                                                                                  Integer::sum));
+    }
+}
+
+/**
+ * Approximate top-K of the actors and of the (actor, year) pairs in fixed memory, using Space-Saving summaries. The
+ * report shows the estimated count of each key, or a range when the estimate has an error.
+ * <p>
+ * The (actor, year) pairs are keyed on the hash code of the actor and the year, so no string is created per line, and
+ * the actor names are only kept for the keys that the summary currently monitors. Two actors with the same hash code
+ * are counted together in a year, which a 32-bit hash makes rare.
+ */
+class HeavyHitters implements Sink {
+    static final int DEFAULT_CAPACITY = 10000;
+    private static final int DEFAULT_TOP_COUNT = 5;
+
+    private final int capacity;
+    private final int topCount;
+    private final SpaceSaving<String> actors;
+    private final SpaceSaving<Long> actorYears;
+    private final Map<Long, String> actorYearNames = new HashMap<>();
+
+    public HeavyHitters() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public HeavyHitters(final int capacity) {
+        this(capacity, DEFAULT_TOP_COUNT);
+    }
+
+    public HeavyHitters(final int capacity, final int topCount) {
+        this.capacity = capacity;
+        this.topCount = topCount;
+        this.actors = new SpaceSaving<>(capacity);
+        this.actorYears = new SpaceSaving<>(capacity);
+    }
+
+    /**
+     * Count an actor and the combination of the actor and the year. When a new combination replaces a monitored one,
+     * the name of the replaced combination is forgotten; the "actor in year" names are only built in the report.
+     */
+    @Override
+    public void processLine(final String title, final int year, final String appendix, final List<String> actors) {
+        for (final String actor : actors) {
+            this.actors.add(actor);
+            final long actorYear = LongCounter.compositeKey(actor.hashCode(), year);
+            final Long replacedActorYear = actorYears.add(actorYear);
+            if (replacedActorYear != null)
+                actorYearNames.remove(replacedActorYear);
+            actorYearNames.putIfAbsent(actorYear, actor);
+        }
+    }
+
+    @Override
+    public void report() {
+        printTop("actors", actors);
+        printTop("actors in one year",
+                 actorYears.mapKeys(key -> actorYearNames.get(key) + " in " + LongCounter.lowPart(key)));
+    }
+
+    /**
+     * Print the top keys of a summary, leaving out the keys whose guaranteed count is not higher than the maximum
+     * error: such a key may not be more frequent than a key that is not monitored, so it says nothing.
+     *
+     * @param description the description of the keys.
+     * @param summary     the summary.
+     */
+    private void printTop(final String description, final SpaceSaving<String> summary) {
+        final long maximumError = summary.getMaximumError();
+        final List<SpaceSaving.Estimate<String>> top = new ArrayList<>();
+        for (final SpaceSaving.Estimate<String> estimate : summary.getTop(topCount))
+            if (estimate.getGuaranteedCount() > maximumError)
+                top.add(estimate);
+        if (!top.isEmpty())
+            System.out.println(String.format("Top %d %s (error at most %d): %s.", topCount, description, maximumError,
+                                             top));
+        else
+            System.out.println(String.format("Top %d %s: none stands out above the error of %d (capacity %d is too "
+                                             + "small).", topCount, description, maximumError, capacity));
+    }
+
+    @Override
+    public Sink newPartial() {
+        return new HeavyHitters(capacity, topCount);
+    }
+
+    @Override
+    public Set<MovieField> getFields() {
+        return EnumSet.of(MovieField.YEAR, MovieField.ACTORS);
+    }
+
+    @Override
+    public void combine(final Sink partial) {
+        final HeavyHitters heavyHitters = (HeavyHitters) partial;
+        actors.combine(heavyHitters.actors);
+        actorYears.combine(heavyHitters.actorYears);
+        heavyHitters.actorYearNames.forEach(actorYearNames::putIfAbsent);
+        actorYearNames.keySet().removeIf(actorYear -> !actorYears.contains(actorYear));
+    }
 }
@@ -0,0 +1,31 @@
+package com.github.freekdb.groovy_and_java_8.sinks;
+
+/**
+ * Management interface with the metrics of one sink of an instrumented Fork (or of the parsing in FileSource), as
+ * registered on the platform MBean server under "com.github.freekdb.groovy_and_java_8.sinks:type=SinkMetrics".
+ * <p>
+ * The latencies come from a histogram with power-of-two buckets, so the percentiles are upper bounds that are at most
+ * a factor two too high. For a parallel fork, the metrics include the partial metrics of its workers while they
+ * run, and the partial metrics are merged when the partial sinks are combined.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public interface SinkMetricsMXBean {
+    String getName();
+    long getLineCount();
+    long getTotalNanos();
+    double getLinesPerSecond();
+    double getMeanNanos();
+    long getMedianNanos();
+    long getP99Nanos();
+    long getMaximumNanos();
+    long getReportNanos();
+
+    /**
+     * Get the latency histogram: element i is the number of lines that took between 2^i and 2^(i+1) nanoseconds
+     * (element 0 includes lines that took 0 nanoseconds).
+     *
+     * @return the bucket counts.
+     */
+    long[] getHistogram();
+}
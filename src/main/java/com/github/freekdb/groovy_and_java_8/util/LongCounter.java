@@ -0,0 +1,157 @@
+package com.github.freekdb.groovy_and_java_8.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive long keys to int counts, without boxing and without allocating per
+ * increment. Composite keys (for example an actor id and a year) can be packed into one long with compositeKey.
+ *
+ * @author <a href="mailto:freekdb@gmail.com">Freek de Bruijn</a>
+ */
+public class LongCounter {
+    private static final int MINIMUM_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] counts;
+    private int mask;
+    private int size;
+
+    public LongCounter() {
+        this(MINIMUM_CAPACITY);
+    }
+
+    public LongCounter(final int expectedSize) {
+        allocate(Math.max(MINIMUM_CAPACITY, Integer.highestOneBit(Math.max(1, 2 * expectedSize - 1)) << 1));
+    }
+
+    /**
+     * Pack two ints into one long key.
+     *
+     * @param high the int for the high 32 bits.
+     * @param low  the int for the low 32 bits.
+     * @return the composite key.
+     */
+    public static long compositeKey(final int high, final int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    public static int highPart(final long compositeKey) {
+        return (int) (compositeKey >>> 32);
+    }
+
+    public static int lowPart(final long compositeKey) {
+        return (int) compositeKey;
+    }
+
+    public int increment(final long key) {
+        return add(key, 1);
+    }
+
+    /**
+     * Add a positive amount to the count of a key.
+     *
+     * @param key   the key.
+     * @param delta the amount to add (should be larger than zero).
+     * @return the new count of the key.
+     */
+    public int add(final long key, final int delta) {
+        int index = indexOf(key);
+        while (counts[index] != 0) {
+            if (keys[index] == key)
+                return counts[index] += delta;
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        counts[index] = delta;
+        if (++size > (mask + 1) / 2)
+            allocate(2 * (mask + 1));
+        return delta;
+    }
+
+    public int get(final long key) {
+        int index = indexOf(key);
+        while (counts[index] != 0) {
+            if (keys[index] == key)
+                return counts[index];
+            index = (index + 1) & mask;
+        }
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(final KeyCountConsumer consumer) {
+        for (int index = 0; index < counts.length; index++)
+            if (counts[index] != 0)
+                consumer.accept(keys[index], counts[index]);
+    }
+
+    /**
+     * Add all counts of another counter to this counter.
+     *
+     * @param other the other counter.
+     */
+    public void combine(final LongCounter other) {
+        other.forEach(this::add);
+    }
+
+    public int getMaximumCount() {
+        int maximumCount = 0;
+        for (final int count : counts)
+            maximumCount = Math.max(maximumCount, count);
+        return maximumCount;
+    }
+
+    /**
+     * Get all keys that share the highest count (the argmax, keeping ties).
+     *
+     * @return the keys with the highest count, in ascending order.
+     */
+    public long[] getMaximumKeys() {
+        final int maximumCount = getMaximumCount();
+        long[] maximumKeys = new long[4];
+        int maximumKeyCount = 0;
+        for (int index = 0; index < counts.length; index++)
+            if (counts[index] == maximumCount && maximumCount > 0) {
+                if (maximumKeyCount == maximumKeys.length)
+                    maximumKeys = Arrays.copyOf(maximumKeys, 2 * maximumKeyCount);
+                maximumKeys[maximumKeyCount++] = keys[index];
+            }
+        maximumKeys = Arrays.copyOf(maximumKeys, maximumKeyCount);
+        Arrays.sort(maximumKeys);
+        return maximumKeys;
+    }
+
+    private int indexOf(final long key) {
+        long hash = key;
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return (int) (hash ^ (hash >>> 33)) & mask;
+    }
+
+    private void allocate(final int capacity) {
+        final long[] oldKeys = keys;
+        final int[] oldCounts = counts;
+        keys = new long[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+        if (oldCounts != null)
+            for (int oldIndex = 0; oldIndex < oldCounts.length; oldIndex++)
+                if (oldCounts[oldIndex] != 0) {
+                    int index = indexOf(oldKeys[oldIndex]);
+                    while (counts[index] != 0)
+                        index = (index + 1) & mask;
+                    keys[index] = oldKeys[oldIndex];
+                    counts[index] = oldCounts[oldIndex];
+                }
+    }
+
+    /**
+     * Callback for the key and count pairs of a counter.
+     */
+    public interface KeyCountConsumer {
+        void accept(final long key, final int count);
+    }
+}